@@ -0,0 +1,162 @@
+package com.extendedclip.papi.expansion.checkitem.bench;
+
+import com.extendedclip.papi.expansion.checkitem.CheckItemExpansion;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the real placeholder entry point for each mode. {@code cache} selects
+ * cold (no parse or result cache), parse (parse cache only) or warm (both caches).
+ * NBT matching is not covered: NBT-API reads custom data through CraftBukkit, which the
+ * stand-in stacks cannot provide.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckItemBenchmark {
+
+    static final Map<String, String> SPECS = Map.of(
+            "static", "mat:DIAMOND,amt:16",
+            "named", "mat:DIAMOND,namecontains:Bench,lorecontains:line 7",
+            "dynamic", "mat:DIAMOND,amt:{bench_16},namecontains:{bench_Bench}");
+
+    private static final Material[] MIXED = {
+            Material.DIAMOND, Material.STONE, Material.IRON_INGOT, Material.GOLD_INGOT,
+            Material.COBBLESTONE, Material.OAK_LOG, Material.BREAD, Material.ARROW};
+
+    @State(Scope.Thread)
+    public static class Reads {
+        @Param({"cold", "parse", "warm"})
+        public String cache;
+
+        @Param({"static", "named", "dynamic"})
+        public String spec;
+
+        @Param({"sparse", "full", "meta-heavy"})
+        public String inventory;
+
+        CheckItemExpansion expansion;
+        Player player;
+        String check;
+        String amount;
+        String multi;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            expansion = newExpansion(cache);
+            player = StandIns.player("reader");
+            fill(player, inventory);
+            String s = SPECS.get(spec);
+            check = s;
+            amount = "amount_" + s;
+            multi = "multi_" + s + "||amount_" + s + "||mat:STONE";
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            expansion.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writes {
+        @Param({"sparse", "full", "meta-heavy"})
+        public String inventory;
+
+        CheckItemExpansion expansion;
+        Player player;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            expansion = newExpansion("warm");
+            player = StandIns.player("writer");
+        }
+
+        /** remove_ and give_ mutate the inventory, so every call starts from the same contents. */
+        @Setup(Level.Invocation)
+        public void refill() {
+            fill(player, inventory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            expansion.stop();
+        }
+    }
+
+    @Benchmark
+    public String check(Reads s) {
+        return s.expansion.onPlaceholderRequest(s.player, s.check);
+    }
+
+    @Benchmark
+    public String amount(Reads s) {
+        return s.expansion.onPlaceholderRequest(s.player, s.amount);
+    }
+
+    @Benchmark
+    public String multi(Reads s) {
+        return s.expansion.onPlaceholderRequest(s.player, s.multi);
+    }
+
+    @Benchmark
+    public String getinfo(Reads s) {
+        return s.expansion.onPlaceholderRequest(s.player, "getinfo:0_");
+    }
+
+    @Benchmark
+    public String remove(Writes s) {
+        return s.expansion.onPlaceholderRequest(s.player, "remove_mat:DIAMOND,amt:16");
+    }
+
+    @Benchmark
+    public String give(Writes s) {
+        return s.expansion.onPlaceholderRequest(s.player, "give_mat:DIAMOND,amt:96");
+    }
+
+    static CheckItemExpansion newExpansion(String cache) throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("give_enabled", true);
+        settings.put("remove_enabled", true);
+        settings.put("cache_enabled", !"cold".equals(cache));
+        settings.put("result_cache_enabled", "warm".equals(cache));
+        StandIns.install(settings, new StandIns.NumberExpansion());
+        CheckItemExpansion expansion = new CheckItemExpansion();
+        expansion.start();
+        return expansion;
+    }
+
+    /**
+     * sparse: a few diamond stacks; full: every storage and armor slot taken by mixed materials;
+     * meta-heavy: full, with a display name and twelve lore lines on every stack.
+     */
+    static void fill(Player player, String inventory) {
+        player.getInventory().clear();
+        if ("sparse".equals(inventory)) {
+            for (int slot : new int[]{3, 11, 20, 35}) {
+                player.getInventory().setItem(slot, StandIns.stack(Material.DIAMOND, 16, null, null));
+            }
+            return;
+        }
+        boolean heavy = "meta-heavy".equals(inventory);
+        List<String> lore = new ArrayList<>();
+        for (int i = 0; i < 12; i++) lore.add("§7Bench lore line " + i);
+        for (int slot = 0; slot < StandIns.INVENTORY_SIZE; slot++) {
+            Material type = MIXED[slot % MIXED.length];
+            ItemStack stack = heavy
+                    ? StandIns.stack(type, 32, "§6Bench Item #" + slot, lore)
+                    : StandIns.stack(type, 32, null, null);
+            player.getInventory().setItem(slot, stack);
+        }
+    }
+}
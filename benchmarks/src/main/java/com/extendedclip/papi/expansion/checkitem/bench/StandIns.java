@@ -0,0 +1,330 @@
+package com.extendedclip.papi.expansion.checkitem.bench;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * In-memory stand-ins for the parts of Bukkit and PlaceholderAPI the expansion touches, so the
+ * real request paths run in a plain JVM. Interfaces are dynamic proxies; anything not modelled
+ * here answers with a do-nothing default.
+ */
+final class StandIns {
+
+    static final int INVENTORY_SIZE = 41;
+    static final int OFF_HAND = 40;
+
+    private static final Object NOT_HANDLED = new Object();
+
+    private static final List<Player> ONLINE = new ArrayList<>();
+    private static YamlConfiguration config;
+
+    private StandIns() {}
+
+    /**
+     * Installs the fake server and PlaceholderAPI instance once per JVM, then replaces the
+     * expansion's config section with {@code settings}.
+     */
+    static synchronized void install(Map<String, Object> settings, PlaceholderExpansion... expansions) throws Exception {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(nullObject(Server.class, (proxy, name, args) -> switch (name) {
+                case "getLogger" -> Logger.getLogger("checkitem-bench");
+                case "getBukkitVersion" -> "1.21.4-R0.1-SNAPSHOT";
+                case "getItemFactory" -> ITEM_FACTORY;
+                case "getOnlinePlayers" -> ONLINE;
+                case "isPrimaryThread" -> true;
+                default -> NOT_HANDLED;
+            }));
+            installPlaceholderApi();
+        }
+        config = new YamlConfiguration();
+        config.set("boolean.true", "yes");
+        config.set("boolean.false", "no");
+        settings.forEach((k, v) -> config.set("expansions.checkitem." + k, v));
+        setField(JavaPlugin.class, PlaceholderAPIPlugin.getInstance(), FileConfiguration.class, config);
+        Map<String, PlaceholderExpansion> registered = expansionMap();
+        registered.clear();
+        for (PlaceholderExpansion e : expansions) registered.put(e.getIdentifier().toLowerCase(Locale.ROOT), e);
+    }
+
+    static Player player(String name) {
+        UUID id = UUID.nameUUIDFromBytes(name.getBytes());
+        ItemStack[] slots = new ItemStack[INVENTORY_SIZE];
+        Player[] self = new Player[1];
+        PlayerInventory inv = nullObject(PlayerInventory.class, (proxy, m, args) -> inventory(slots, self[0], m, args));
+        self[0] = nullObject(Player.class, (proxy, m, args) -> switch (m) {
+            case "getInventory" -> inv;
+            case "getUniqueId" -> id;
+            case "getName", "getDisplayName" -> name;
+            case "getPlayer" -> proxy;
+            case "isOnline" -> true;
+            default -> NOT_HANDLED;
+        });
+        return self[0];
+    }
+
+    static void setOnline(Collection<Player> players) {
+        ONLINE.clear();
+        ONLINE.addAll(players);
+    }
+
+    static ItemStack stack(Material type, int amount, String name, List<String> lore) {
+        ItemStack stack = new ItemStack(type, amount);
+        if (name != null || lore != null) {
+            ItemMeta meta = stack.getItemMeta();
+            if (name != null) meta.setDisplayName(name);
+            if (lore != null) meta.setLore(lore);
+            stack.setItemMeta(meta);
+        }
+        return stack;
+    }
+
+    // ---------------------------------------------------------------- inventory
+
+    private static Object inventory(ItemStack[] slots, Player holder, String m, Object[] args) {
+        switch (m) {
+            case "getSize": return INVENTORY_SIZE;
+            case "getHolder": return holder;
+            case "getHeldItemSlot": return 0;
+            case "getContents": return slots.clone();
+            case "getStorageContents": return Arrays.copyOf(slots, 36);
+            case "getArmorContents": return Arrays.copyOfRange(slots, 36, 40);
+            case "setArmorContents":
+                ItemStack[] armor = (ItemStack[]) args[0];
+                System.arraycopy(armor, 0, slots, 36, Math.min(4, armor.length));
+                return null;
+            case "getItem": return slots[(int) args[0]];
+            case "setItem": slots[(int) args[0]] = (ItemStack) args[1]; return null;
+            case "clear":
+                if (args == null) Arrays.fill(slots, null);
+                else slots[(int) args[0]] = null;
+                return null;
+            case "getItemInMainHand": return orAir(slots[0]);
+            case "getItemInOffHand": return orAir(slots[OFF_HAND]);
+            case "setItemInOffHand": slots[OFF_HAND] = (ItemStack) args[0]; return null;
+            case "addItem": return addItem(slots, (ItemStack[]) args[0]);
+            default: return NOT_HANDLED;
+        }
+    }
+
+    /** Merges into similar stacks first, then fills empty storage slots, like CraftInventory. */
+    private static HashMap<Integer, ItemStack> addItem(ItemStack[] slots, ItemStack[] items) {
+        HashMap<Integer, ItemStack> leftover = new HashMap<>();
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i].clone();
+            int remaining = item.getAmount();
+            int max = item.getMaxStackSize();
+            for (int s = 0; s < 36 && remaining > 0; s++) {
+                ItemStack cur = slots[s];
+                if (cur == null || !cur.isSimilar(item) || cur.getAmount() >= max) continue;
+                int moved = Math.min(remaining, max - cur.getAmount());
+                cur.setAmount(cur.getAmount() + moved);
+                remaining -= moved;
+            }
+            for (int s = 0; s < 36 && remaining > 0; s++) {
+                if (slots[s] != null) continue;
+                ItemStack put = item.clone();
+                put.setAmount(Math.min(remaining, max));
+                slots[s] = put;
+                remaining -= put.getAmount();
+            }
+            if (remaining > 0) {
+                item.setAmount(remaining);
+                leftover.put(i, item);
+            }
+        }
+        return leftover;
+    }
+
+    private static ItemStack orAir(ItemStack stack) {
+        return stack != null ? stack : new ItemStack(Material.AIR);
+    }
+
+    // ---------------------------------------------------------------- item meta
+
+    private static final ItemFactory ITEM_FACTORY = nullObject(ItemFactory.class, (proxy, m, args) -> switch (m) {
+        case "getItemMeta" -> newMeta(new HashMap<>());
+        case "isApplicable" -> true;
+        case "asMetaFor" -> args[0];
+        case "equals" -> args.length == 2 ? metaEquals(args[0], args[1]) : proxy == args[0];
+        default -> NOT_HANDLED;
+    });
+
+    private static boolean metaEquals(Object a, Object b) {
+        return values(a).equals(values(b));
+    }
+
+    private static Map<String, Object> values(Object meta) {
+        if (meta == null) return Collections.emptyMap();
+        return ((MetaHandler) Proxy.getInvocationHandler(meta)).values;
+    }
+
+    private static ItemMeta newMeta(Map<String, Object> values) {
+        return (ItemMeta) Proxy.newProxyInstance(StandIns.class.getClassLoader(),
+                new Class<?>[]{Damageable.class}, new MetaHandler(values));
+    }
+
+    /** Bean-style meta: {@code setX} stores X, {@code getX}/{@code isX} read it, {@code hasX} tests it. */
+    private record MetaHandler(Map<String, Object> values) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, java.lang.reflect.Method method, Object[] args) {
+            String m = method.getName();
+            switch (m) {
+                case "clone": return newMeta(new HashMap<>(values));
+                case "equals": return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                        && metaEquals(proxy, args[0]);
+                case "hashCode": return values.hashCode();
+                case "toString": return "BenchMeta" + values;
+                case "hasEnchants": return !((Map<?, ?>) values.getOrDefault("Enchants", Map.of())).isEmpty();
+                case "addEnchant":
+                    @SuppressWarnings("unchecked")
+                    Map<Object, Integer> enchants = (Map<Object, Integer>) values.computeIfAbsent("Enchants", k -> new HashMap<>());
+                    enchants.put(args[0], (Integer) args[1]);
+                    return true;
+                default:
+            }
+            if (m.startsWith("set") && args != null && args.length == 1) {
+                if (args[0] == null) values.remove(m.substring(3));
+                else values.put(m.substring(3), args[0] instanceof List<?> l ? new ArrayList<>(l) : args[0]);
+                return null;
+            }
+            if (m.startsWith("has") && (args == null || args.length == 0)) return values.containsKey(m.substring(3));
+            String key = m.startsWith("get") ? m.substring(3) : m.startsWith("is") ? m.substring(2) : null;
+            Object v = key != null ? values.get(key) : null;
+            if (v != null) return v instanceof List<?> l ? new ArrayList<>(l) : v;
+            if (method.getReturnType() == Map.class) return new HashMap<>();
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    // ---------------------------------------------------------------- PlaceholderAPI
+
+    private static void installPlaceholderApi() throws Exception {
+        PlaceholderAPIPlugin plugin = allocate(PlaceholderAPIPlugin.class);
+        for (Field f : PlaceholderAPIPlugin.class.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers()) && f.getType() == PlaceholderAPIPlugin.class) {
+                f.setAccessible(true);
+                f.set(null, plugin);
+            } else if (!Modifier.isStatic(f.getModifiers()) && f.getType().getSimpleName().equals("PlaceholderAPIConfig")) {
+                f.setAccessible(true);
+                f.set(plugin, f.getType().getDeclaredConstructor(PlaceholderAPIPlugin.class).newInstance(plugin));
+            } else if (!Modifier.isStatic(f.getModifiers()) && f.getType().getSimpleName().equals("LocalExpansionManager")) {
+                Object manager = allocate(f.getType());
+                initEmptyFields(manager);
+                f.setAccessible(true);
+                f.set(plugin, manager);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, PlaceholderExpansion> expansionMap() throws Exception {
+        for (Field f : PlaceholderAPIPlugin.class.getDeclaredFields()) {
+            if (f.getType().getSimpleName().equals("LocalExpansionManager")) {
+                f.setAccessible(true);
+                Object manager = f.get(PlaceholderAPIPlugin.getInstance());
+                for (Field mf : manager.getClass().getDeclaredFields()) {
+                    if (Map.class.isAssignableFrom(mf.getType()) && !Modifier.isStatic(mf.getModifiers())) {
+                        mf.setAccessible(true);
+                        return (Map<String, PlaceholderExpansion>) mf.get(manager);
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("PlaceholderAPI expansion registry not found");
+    }
+
+    /** Unsafe-allocated objects skip field initialisers; give maps and locks their usual empty values. */
+    private static void initEmptyFields(Object target) throws Exception {
+        for (Field f : target.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers())) continue;
+            f.setAccessible(true);
+            if (f.get(target) != null) continue;
+            if (f.getType().isAssignableFrom(ConcurrentHashMap.class)) f.set(target, new ConcurrentHashMap<>());
+            else if (f.getType().isAssignableFrom(ReentrantLock.class) || f.getType() == Lock.class) f.set(target, new ReentrantLock());
+        }
+    }
+
+    private static <T> T allocate(Class<T> type) throws Exception {
+        Field theUnsafe = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Object unsafe = theUnsafe.get(null);
+        return type.cast(unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, type));
+    }
+
+    private static void setField(Class<?> owner, Object target, Class<?> fieldType, Object value) throws Exception {
+        for (Field f : owner.getDeclaredFields()) {
+            if (f.getType() == fieldType && !Modifier.isStatic(f.getModifiers())) {
+                f.setAccessible(true);
+                f.set(target, value);
+                return;
+            }
+        }
+        throw new IllegalStateException("No " + fieldType.getSimpleName() + " field in " + owner.getName());
+    }
+
+    /** Placeholder source for dynamic specs: {@code {bench_<n>}} resolves to {@code <n>}. */
+    static final class NumberExpansion extends PlaceholderExpansion {
+        @Override public String getIdentifier() { return "bench"; }
+        @Override public String getAuthor() { return "bench"; }
+        @Override public String getVersion() { return "1"; }
+        @Override public String onRequest(OfflinePlayer player, String params) { return params; }
+    }
+
+    // ---------------------------------------------------------------- proxies
+
+    @FunctionalInterface
+    private interface Answer {
+        Object answer(Object proxy, String method, Object[] args) throws Exception;
+    }
+
+    private static <T> T nullObject(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(StandIns.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Object v = answer.answer(proxy, method.getName(), args);
+                    if (v != NOT_HANDLED) return v;
+                    return switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "toString" -> type.getSimpleName() + "@bench";
+                        default -> method.getReturnType().isInterface()
+                                ? nullObject(method.getReturnType(), (p, m, a) -> NOT_HANDLED)
+                                : defaultValue(method.getReturnType());
+                    };
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == char.class) return '\0';
+        return null;
+    }
+}
@@ -0,0 +1,272 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code amtexpr:} compiled once into a tree of closures over exact {@code long} arithmetic.
+ * Grammar: {@code + - * / %}, parentheses, unary sign, integer literals, {@code min(a,b,...)},
+ * {@code max(a,b,...)}, {@code clamp(x,lo,hi)} and {@code {placeholder}} or {@code %placeholder%}
+ * variables. A {@code %} in operand position opens a placeholder, in operator position it is the
+ * remainder. Each distinct placeholder gets one slot, so a request only resolves those values
+ * and runs the tree.
+ * {@code /} truncates toward zero; overflow, division by zero and non-numeric variable values
+ * make the result invalid.
+ */
+final class AmountExpression {
+
+    static final int INVALID = -1;
+
+    private static final String CMI_WRAPPER = "{cmi_equationint_";
+
+    @FunctionalInterface
+    private interface Node {
+        long eval(long[] vars);
+    }
+
+    private static final class Invalid extends RuntimeException {
+        Invalid() { super(null, null, false, false); }
+    }
+
+    private static final Invalid INVALID_VALUE = new Invalid();
+
+    private final Node root;
+    private final String[] variables;
+
+    private AmountExpression(Node root, String[] variables) {
+        this.root = root;
+        this.variables = variables;
+    }
+
+    /**
+     * Compiles {@code text}, unwrapping the legacy {@code {cmi_equationint_...}} form.
+     * Returns null, after reporting to {@code errors}, when the text is not a valid expression.
+     */
+    static AmountExpression compile(String text, int offset, ModifierLexer.ErrorSink errors) {
+        int lead = 0;
+        while (lead < text.length() && Character.isWhitespace(text.charAt(lead))) lead++;
+        String body = text.trim();
+        int shift = offset + lead;
+        if (body.startsWith(CMI_WRAPPER) && body.endsWith("}")) {
+            body = body.substring(CMI_WRAPPER.length(), body.length() - 1);
+            shift += CMI_WRAPPER.length();
+        }
+        Parser parser = new Parser(body);
+        try {
+            Node root = parser.expression();
+            parser.skipSpaces();
+            if (parser.pos < body.length()) throw parser.error("unexpected '" + body.charAt(parser.pos) + "'");
+            return new AmountExpression(root, parser.variables.toArray(new String[0]));
+        } catch (SyntaxError e) {
+            errors.error(shift + e.position, "invalid amount expression: " + e.getMessage());
+            return null;
+        }
+    }
+
+    int variables() { return variables.length; }
+
+    /** The placeholder text of variable {@code i}, braces or percent signs included. */
+    String variable(int i) { return variables[i]; }
+
+    /**
+     * Evaluates with the resolved placeholder values, one per variable slot. Negative results
+     * become 0 and results past {@code Integer.MAX_VALUE} saturate; invalid input gives
+     * {@link #INVALID}.
+     */
+    int evaluate(String[] values) {
+        long[] vars = new long[variables.length];
+        try {
+            for (int i = 0; i < vars.length; i++) vars[i] = number(values[i]);
+            long result = root.eval(vars);
+            if (result < 0) return 0;
+            return (int) Math.min(result, Integer.MAX_VALUE);
+        } catch (Invalid | ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    /** Placeholder output as an integer; decimals are floored, anything else is invalid. */
+    private static long number(String value) {
+        if (value == null) throw INVALID_VALUE;
+        String s = value.trim();
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException ignored) {}
+        try {
+            return new BigDecimal(s).setScale(0, RoundingMode.FLOOR).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw INVALID_VALUE;
+        }
+    }
+
+    private static final class SyntaxError extends RuntimeException {
+        final int position;
+
+        SyntaxError(String message, int position) {
+            super(message, null, false, false);
+            this.position = position;
+        }
+    }
+
+    /** Recursive descent over the raw text; spaces are skipped between tokens. */
+    private static final class Parser {
+        private final String s;
+        private final List<String> variables = new ArrayList<>();
+        private int pos;
+
+        Parser(String s) { this.s = s; }
+
+        Node expression() {
+            Node left = term();
+            while (true) {
+                char op = peek();
+                if (op != '+' && op != '-') return left;
+                pos++;
+                Node l = left, r = term();
+                left = op == '+' ? v -> Math.addExact(l.eval(v), r.eval(v))
+                                 : v -> Math.subtractExact(l.eval(v), r.eval(v));
+            }
+        }
+
+        private Node term() {
+            Node left = unary();
+            while (true) {
+                char op = peek();
+                if (op != '*' && op != '/' && op != '%') return left;
+                pos++;
+                Node l = left, r = unary();
+                left = switch (op) {
+                    case '*' -> v -> Math.multiplyExact(l.eval(v), r.eval(v));
+                    case '/' -> v -> l.eval(v) / r.eval(v);
+                    default -> v -> l.eval(v) % r.eval(v);
+                };
+            }
+        }
+
+        private Node unary() {
+            char c = peek();
+            if (c == '-') {
+                pos++;
+                Node operand = unary();
+                return v -> Math.negateExact(operand.eval(v));
+            }
+            if (c == '+') {
+                pos++;
+                return unary();
+            }
+            return primary();
+        }
+
+        private Node primary() {
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                Node inner = expression();
+                expect(')');
+                return inner;
+            }
+            if (c == '{') return variable();
+            if (c == '%') return percentVariable();
+            if (c >= '0' && c <= '9') return literal();
+            if (Character.isLetter(c)) return function();
+            throw error(c == 0 ? "unexpected end" : "unexpected '" + c + "'");
+        }
+
+        private Node literal() {
+            int start = pos;
+            while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') pos++;
+            if (pos < s.length() && s.charAt(pos) == '.') throw error("decimals are not supported");
+            long value;
+            try {
+                value = Long.parseLong(s, start, pos, 10);
+            } catch (NumberFormatException e) {
+                throw new SyntaxError("number too large", start);
+            }
+            return v -> value;
+        }
+
+        private Node variable() {
+            int start = pos;
+            int depth = 0;
+            for (; pos < s.length(); pos++) {
+                char c = s.charAt(pos);
+                if (c == '{') depth++;
+                else if (c == '}' && --depth == 0) break;
+            }
+            if (pos >= s.length()) throw new SyntaxError("unclosed '{'", start);
+            return slot(s.substring(start, ++pos));
+        }
+
+        /** {@code %name%}: the name runs to the next {@code %} and holds no spaces. */
+        private Node percentVariable() {
+            int start = pos++;
+            while (pos < s.length() && s.charAt(pos) != '%' && !Character.isWhitespace(s.charAt(pos))) pos++;
+            if (pos >= s.length() || s.charAt(pos) != '%') throw new SyntaxError("unclosed '%'", start);
+            if (pos == start + 1) throw new SyntaxError("empty placeholder", start);
+            return slot(s.substring(start, ++pos));
+        }
+
+        private Node slot(String token) {
+            int slot = variables.indexOf(token);
+            if (slot < 0) {
+                slot = variables.size();
+                variables.add(token);
+            }
+            int index = slot;
+            return v -> v[index];
+        }
+
+        private Node function() {
+            int start = pos;
+            while (pos < s.length() && Character.isLetter(s.charAt(pos))) pos++;
+            String name = s.substring(start, pos);
+            expect('(');
+            List<Node> args = new ArrayList<>();
+            args.add(expression());
+            while (peek() == ',') {
+                pos++;
+                args.add(expression());
+            }
+            expect(')');
+            Node[] a = args.toArray(new Node[0]);
+            switch (name) {
+                case "min": return v -> {
+                    long m = a[0].eval(v);
+                    for (int i = 1; i < a.length; i++) m = Math.min(m, a[i].eval(v));
+                    return m;
+                };
+                case "max": return v -> {
+                    long m = a[0].eval(v);
+                    for (int i = 1; i < a.length; i++) m = Math.max(m, a[i].eval(v));
+                    return m;
+                };
+                case "clamp":
+                    if (a.length != 3) throw new SyntaxError("clamp takes 3 arguments", start);
+                    return v -> Math.max(a[1].eval(v), Math.min(a[2].eval(v), a[0].eval(v)));
+                default:
+                    throw new SyntaxError("unknown function '" + name + "'", start);
+            }
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw error("expected '" + c + "'");
+            pos++;
+        }
+
+        /** Next non-space char without consuming it, or 0 at the end. */
+        private char peek() {
+            skipSpaces();
+            return pos < s.length() ? s.charAt(pos) : 0;
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private SyntaxError error(String message) {
+            return new SyntaxError(message, pos);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.extendedclip.papi.expansion.checkitem;
 
 import com.extendedclip.papi.expansion.checkitem.cache.PlaceholderCache;
+import com.extendedclip.papi.expansion.checkitem.inventory.InventorySnapshot;
+import com.extendedclip.papi.expansion.checkitem.inventory.InventorySnapshots;
+import com.extendedclip.papi.expansion.checkitem.inventory.InventoryTracker;
+import com.extendedclip.papi.expansion.checkitem.inventory.MaterialIndexes;
+import com.extendedclip.papi.expansion.checkitem.metrics.MetricsRegistry;
 import de.tr7zw.changeme.nbtapi.NBT;
 import de.tr7zw.changeme.nbtapi.NBTItem;
 import de.tr7zw.changeme.nbtapi.NBTType;
@@ -8,34 +13,37 @@ import de.tr7zw.changeme.nbtapi.iface.ReadableNBT;
 import de.tr7zw.changeme.nbtapi.iface.ReadWriteNBT;
 import me.clip.placeholderapi.PlaceholderAPI;
 import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import me.clip.placeholderapi.expansion.Cacheable;
 import me.clip.placeholderapi.expansion.Configurable;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import me.clip.placeholderapi.expansion.Taskable;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
 import org.bukkit.inventory.*;
 import org.bukkit.inventory.meta.Damageable;
 import org.bukkit.inventory.meta.EnchantmentStorageMeta;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.PotionMeta;
 import org.bukkit.potion.PotionType;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * CheckItemExpansion with internal arithmetic expression support via amtexpr:
+ * CheckItemExpansion with internal arithmetic expression support via amtexpr (see {@link AmountExpression}):
  * New dynamic expression wrapper format: {cmi_equationint_<expression>}
  * Example: %checkitem_remove_amtexpr:{cmi_equationint_64-{cmi_user_metaint_test1}},mat:diamond%
  */
-public class CheckItemExpansion extends PlaceholderExpansion implements Configurable {
+public class CheckItemExpansion extends PlaceholderExpansion implements Configurable, Taskable, Cacheable {
 
     private static final String IDENTIFIER = "checkitem";
     private static final String AUTHOR = "cj89898";
@@ -46,15 +54,56 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
     private static final String MSG_INVALID_SLOT = "Invalid number for slot";
     private static final String RESULT_ERROR = "error";
     private static final String RESULT_YES = "yes";
+    private static final String MULTI_SEPARATOR = "||";
+    private static final String EXCHANGE_ARROW = ">>";
+    /** Mode prefixes that cannot be evaluated inside a batch (after an optional {@code amount_}). */
+    private static final List<String> NON_BATCH_PREFIXES = List.of(
+            "amount_", "remove_", "give_", "getinfo:", "canfit_", "exchange_", "multi_", "server_amount_", "stats_");
+    private static final int OFF_HAND_SLOT = 40;
 
     private static final boolean USE_COMPONENTS = detectComponentsSupport();
 
+    /** What a bare {@code getinfo:<slot>} reports. */
+    private static final ItemWrapper GETINFO_ALL = getInfoAll();
+
+    private static final Set<String> MODIFIERS = Set.of(
+            "data", "custommodeldata", "mat", "amtexpr", "amt",
+            "namestartswith", "namecontains", "nameequals", "lorecontains", "loreequals",
+            "namecontainsany", "lorecontainsany", "mattag",
+            "matcontains", "enchantments", "potiontype", "potionextended", "potionupgraded",
+            "nbtstrings", "nbtints", "inslot", "inhand", "strict", "enchanted");
+
     private PlaceholderCache parseCache;
-    private boolean cacheInitialized = false;
+    private PlaceholderCache resultCache;
+    private PlaceholderCache giveCache;
+    private volatile boolean cacheInitialized = false;
     private boolean cacheEnabled = true;
     private int cacheMaxSize = 500;
 
-    private static final String DYNAMIC_ARG_REGEX = ".*[%{}].*";
+    private InventoryTracker inventoryTracker;
+    private MaterialIndexes materialIndexes;
+    private InventorySnapshots inventorySnapshots;
+    private StackAttributeCache stackAttributes;
+    private ServerAmounts serverAmounts;
+    private MetricsRegistry metrics;
+    private BukkitTask metricsDump;
+
+    private static ItemWrapper getInfoAll() {
+        ItemWrapper.Builder b = ItemWrapper.builder();
+        b.setCheckNameContains(true);
+        b.setCheckType(true);
+        b.setCheckAmount(true);
+        b.setCheckDurability(true);
+        b.setCheckCustomData(true);
+        b.setCheckLoreContains(true);
+        b.setCheckEnchantments(true);
+        b.setCheckEnchanted(true);
+        b.setCheckPotionType(true);
+        b.setCheckPotionExtended(true);
+        b.setCheckPotionUpgraded(true);
+        b.setCheckNbtStrings(true);
+        return b.build(true);
+    }
 
     private static boolean detectComponentsSupport() {
         String version = Bukkit.getServer().getBukkitVersion();
@@ -69,147 +118,408 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         return false;
     }
 
+    /** The custom-data compound of a stack: the component on 1.20.5+, the item tag before. */
+    static ReadableNBT readNbt(ItemStack stack) {
+        if (USE_COMPONENTS) {
+            return NBT.modifyComponents(stack,
+                    (java.util.function.Function<ReadWriteNBT, ReadableNBT>)
+                            nbt -> nbt.getCompound("minecraft:custom_data"));
+        }
+        return new NBTItem(stack);
+    }
+
+    /** Double-checked: placeholder requests may arrive concurrently from async threads. */
     private void ensureCache() {
-        if (!cacheInitialized) {
+        if (cacheInitialized) return;
+        synchronized (this) {
+            if (cacheInitialized) return;
             Object enabled = get("cache_enabled", true);
             Object maxSize = get("cache_max_size", 500);
             cacheEnabled = enabled instanceof Boolean b ? b : true;
             cacheMaxSize = (maxSize instanceof Number n) ? Math.max(50, n.intValue()) : 500;
             parseCache = new PlaceholderCache(cacheMaxSize, 0);
+            if ((boolean) get("result_cache_enabled", true)) {
+                Object resultMax = get("result_cache_max_size", 2000);
+                Object resultTtl = get("result_cache_ttl_millis", 1000);
+                resultCache = new PlaceholderCache(
+                        resultMax instanceof Number n ? n.intValue() : 2000,
+                        resultTtl instanceof Number n ? n.longValue() : 1000L);
+            }
+            Object giveMax = get("give_cache_max_size", 200);
+            int giveMaxSize = giveMax instanceof Number n ? n.intValue() : 200;
+            if (giveMaxSize > 0) giveCache = new PlaceholderCache(giveMaxSize, 0);
             cacheInitialized = true;
         }
     }
 
-    private String resolveAllPlaceholders(Player p, String input) {
-        if (input == null || input.isEmpty()) return input;
-        String prev;
-        String current = input;
-        int safety = 10;
-        do {
-            prev = current;
-            current = PlaceholderAPI.setBracketPlaceholders(p, current);
-            current = PlaceholderAPI.setPlaceholders(p, current);
-        } while (!current.equals(prev) && --safety > 0);
-        return current;
-    }
-
-    public static class ItemWrapper {
-        private boolean checkNameContains;
-        private boolean checkNameStartsWith;
-        private boolean checkNameEquals;
-        private boolean checkLoreContains;
-        private boolean checkLoreEquals;
-        private boolean checkMaterialContains;
-        private boolean checkDurability;
-        private boolean checkCustomData;
-        private boolean checkAmount;
-        private boolean checkType;
-        private boolean checkMainHand;
-        private boolean checkOffHand;
-        private boolean checkEnchantments;
-        private boolean checkEnchanted;
-        private boolean checkPotionType;
-        private boolean checkPotionExtended;
-        private boolean checkPotionUpgraded;
-        private boolean checkNbtStrings;
-        private boolean checkNbtInts;
-        private boolean isStrict;
-        private boolean remove;
-
-        private boolean amountValid = true;
-
-        private String material;
-        private short data;
-        private int customData;
-        private int amount;
-        private String name;
-        private String lore;
-        private String materialString;
-        private HashMap<Enchantment, Integer> enchantments;
-        private PotionType potionType;
-        private boolean potionExtended;
-        private boolean potionUpgraded;
-        private int slot;
-        private Map<String, String> nbtStrings;
-        private Map<String, Integer> nbtInts;
-
-        public ItemWrapper() { slot = -1; }
+    /** Hit/miss/load-time counters of the parsed-spec cache, or null before the first request. */
+    public PlaceholderCache.Stats getParseCacheStats() {
+        return cacheInitialized ? parseCache.stats() : null;
+    }
+
+    /** Counters of the per-inventory-version result cache, or null when it is disabled. */
+    public PlaceholderCache.Stats getResultCacheStats() {
+        return cacheInitialized && resultCache != null ? resultCache.stats() : null;
+    }
+
+    /** Called by PlaceholderAPI on reload: drops parsed specs, results and give prototypes. */
+    @Override
+    public void clear() {
+        synchronized (this) {
+            if (parseCache != null) parseCache.clear();
+            if (resultCache != null) resultCache.clear();
+            if (giveCache != null) giveCache.clear();
+        }
+        if (materialIndexes != null) materialIndexes.clear();
+        if (stackAttributes != null) stackAttributes.clear();
+        if (serverAmounts != null) serverAmounts.clear();
+    }
+
+    @Override
+    public void start() {
+        EnchantmentIndex.get();
+        inventoryTracker = new InventoryTracker(PlaceholderAPIPlugin.getInstance());
+        Bukkit.getPluginManager().registerEvents(inventoryTracker, PlaceholderAPIPlugin.getInstance());
+        if ((boolean) get("index_enabled", false)) {
+            Object maxAge = get("index_max_age_millis", 1000);
+            materialIndexes = new MaterialIndexes(inventoryTracker,
+                    maxAge instanceof Number n ? n.longValue() : 1000L);
+        }
+        if ((boolean) get("stack_cache_enabled", true)) {
+            Object maxAge = get("stack_cache_max_age_millis", 1000);
+            StackAttributeCache attributes = new StackAttributeCache(
+                    maxAge instanceof Number n ? n.longValue() : 1000L);
+            inventoryTracker.onForget(attributes::forget);
+            stackAttributes = attributes;
+        }
+        if ((boolean) get("snapshot_enabled", false)) {
+            Object maxAge = get("snapshot_max_age_millis", 1000);
+            Object period = get("snapshot_interval_ticks", 1);
+            inventorySnapshots = new InventorySnapshots(inventoryTracker,
+                    maxAge instanceof Number n ? n.longValue() : 1000L);
+            inventorySnapshots.start(PlaceholderAPIPlugin.getInstance(),
+                    period instanceof Number n ? n.longValue() : 1L);
+        }
+        Object parallelism = get("server_parallelism", 0);
+        Object interval = get("server_cache_interval_millis", 5000);
+        int threads = parallelism instanceof Number n ? n.intValue() : 0;
+        serverAmounts = new ServerAmounts(PlaceholderAPIPlugin.getInstance(),
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                interval instanceof Number n ? n.longValue() : 5000L);
+
+        if ((boolean) get("metrics_enabled", true)) {
+            metrics = new MetricsRegistry();
+            Object dumpSeconds = get("metrics_dump_interval_seconds", 0);
+            long period = (dumpSeconds instanceof Number n ? n.longValue() : 0L) * 20L;
+            if (period > 0) {
+                File file = new File(PlaceholderAPIPlugin.getInstance().getDataFolder(),
+                        String.valueOf(get("metrics_dump_file", "checkitem-metrics.properties")));
+                metricsDump = Bukkit.getScheduler().runTaskTimerAsynchronously(
+                        PlaceholderAPIPlugin.getInstance(), () -> dumpMetrics(file), period, period);
+            }
+        }
+    }
+
+    private void dumpMetrics(File file) {
+        MetricsRegistry registry = metrics;
+        if (registry == null) return;
+        try {
+            MetricsRegistry.dump(file.toPath(), registry.snapshot(getParseCacheStats(), getResultCacheStats()));
+        } catch (IOException e) {
+            warning("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (inventoryTracker != null) HandlerList.unregisterAll(inventoryTracker);
+        if (materialIndexes != null) materialIndexes.clear();
+        if (inventorySnapshots != null) inventorySnapshots.stop();
+        if (stackAttributes != null) stackAttributes.clear();
+        if (serverAmounts != null) serverAmounts.shutdown();
+        if (metricsDump != null) metricsDump.cancel();
+        metrics = null;
+        metricsDump = null;
+        inventoryTracker = null;
+        materialIndexes = null;
+        inventorySnapshots = null;
+        stackAttributes = null;
+        serverAmounts = null;
+    }
+
+    /**
+     * The published snapshot to read instead of the live inventory: only in snapshot mode,
+     * only off the main thread, and only once one exists for the player (until then the
+     * request falls back to the live inventory, as before). {@code live} is set by the paths
+     * that write what they read (remove_, exchange_): a slot plan built from a snapshot would
+     * be applied to an inventory that may have moved on, so those always read the live one.
+     */
+    private InventorySnapshot snapshotFor(Player p, boolean live) {
+        InventorySnapshots snapshots = inventorySnapshots;
+        if (live || snapshots == null || Bukkit.isPrimaryThread()) return null;
+        return snapshots.get(p.getUniqueId());
+    }
+
+    /** Version of the inventory a request will actually read: the snapshot's when one is used. */
+    private long snapshotVersion(Player p, InventoryTracker tracker, boolean live) {
+        InventorySnapshot snapshot = snapshotFor(p, live);
+        return snapshot != null ? snapshot.version() : tracker.version(p.getUniqueId());
+    }
+
+    /**
+     * Cached stack attributes for the inventory version a request reads, or null when the
+     * cache is off. Fetch it before reading the stacks (see {@link StackAttributeCache#line}).
+     */
+    private StackAttributeCache.Line attributesOf(Player p, boolean live) {
+        StackAttributeCache cache = stackAttributes;
+        InventoryTracker tracker = inventoryTracker;
+        if (cache == null || tracker == null) return null;
+        return cache.line(p.getUniqueId(), snapshotVersion(p, tracker, live));
+    }
+
+    private ItemStack[] contentsOf(Player p, boolean live) {
+        InventorySnapshot snapshot = snapshotFor(p, live);
+        return snapshot != null ? snapshot.contents() : p.getInventory().getContents();
+    }
+
+    private ItemStack itemAt(Player p, int slot, boolean live) {
+        InventorySnapshot snapshot = snapshotFor(p, live);
+        return snapshot != null ? snapshot.item(slot) : p.getInventory().getItem(slot);
+    }
+
+    private int heldSlotOf(Player p, boolean live) {
+        InventorySnapshot snapshot = snapshotFor(p, live);
+        return snapshot != null ? snapshot.heldSlot() : p.getInventory().getHeldItemSlot();
+    }
+
+    private void markInventoryChanged(Player p) {
+        InventoryTracker tracker = inventoryTracker;
+        if (tracker != null) tracker.touch(p);
+    }
+
+    /**
+     * A parsed spec. Immutable, so one instance is shared by every request for the same static
+     * spec and across threads without copying: every modifier flag lives in one {@code long},
+     * strings are interned when the spec is cached, and absent lists are shared empty ones.
+     * Built by {@link Builder}; per-request holes are bound into a fresh one via {@link #toBuilder()}.
+     */
+    public static final class ItemWrapper {
+        private static final long NAME_CONTAINS = 1L;
+        private static final long NAME_STARTS_WITH = 1L << 1;
+        private static final long NAME_EQUALS = 1L << 2;
+        private static final long LORE_CONTAINS = 1L << 3;
+        private static final long LORE_EQUALS = 1L << 4;
+        private static final long NAME_CONTAINS_ANY = 1L << 5;
+        private static final long LORE_CONTAINS_ANY = 1L << 6;
+        private static final long MATERIAL_CONTAINS = 1L << 7;
+        private static final long DURABILITY = 1L << 8;
+        private static final long CUSTOM_DATA = 1L << 9;
+        private static final long AMOUNT = 1L << 10;
+        private static final long TYPE = 1L << 11;
+        private static final long MAIN_HAND = 1L << 12;
+        private static final long OFF_HAND = 1L << 13;
+        private static final long ENCHANTMENTS = 1L << 14;
+        private static final long ENCHANTED = 1L << 15;
+        private static final long POTION_TYPE = 1L << 16;
+        private static final long POTION_EXTENDED = 1L << 17;
+        private static final long POTION_UPGRADED = 1L << 18;
+        private static final long NBT_STRINGS = 1L << 19;
+        private static final long NBT_INTS = 1L << 20;
+        private static final long STRICT = 1L << 21;
+        private static final long AMOUNT_INVALID = 1L << 22;
+        private static final long EXTENDED_VALUE = 1L << 23;
+        private static final long UPGRADED_VALUE = 1L << 24;
+
+        private final long flags;
+        private final short data;
+        private final int customData;
+        private final int amount;
+        private final int slot;
+        private final String material;
+        private final String name;
+        private final String lore;
+        private final String materialString;
+        private final TermAutomaton nameTerms;
+        private final TermAutomaton loreTerms;
+        private final EnumSet<Material> materials;
+        private final EnchantmentSet enchantments;
+        private final PotionType potionType;
+        private final List<NbtCriterion> nbtStrings;
+        private final List<NbtCriterion> nbtInts;
+
+        /** Derived from the fields above on first use; a racing recompute yields an equal matcher. */
+        private CompiledMatcher matcher;
+
+        private ItemWrapper(Builder b, boolean intern) {
+            this.flags = b.flags;
+            this.data = b.data;
+            this.customData = b.customData;
+            this.amount = b.amount;
+            this.slot = b.slot;
+            this.material = intern(b.material, intern);
+            this.name = intern(b.name, intern);
+            this.lore = intern(b.lore, intern);
+            this.materialString = intern(b.materialString, intern);
+            this.nameTerms = b.nameTerms;
+            this.loreTerms = b.loreTerms;
+            this.materials = b.materials == null ? null : b.materials.clone();
+            this.enchantments = b.enchantments;
+            this.potionType = b.potionType;
+            this.nbtStrings = b.nbtStrings.isEmpty() ? List.of() : List.copyOf(b.nbtStrings);
+            this.nbtInts = b.nbtInts.isEmpty() ? List.of() : List.copyOf(b.nbtInts);
+        }
+
+        private static String intern(String s, boolean intern) {
+            return s != null && intern ? s.intern() : s;
+        }
+
+        static Builder builder() { return new Builder(); }
+
+        /** A builder holding this spec's values, for binding per-request holes. */
+        Builder toBuilder() { return new Builder(this); }
+
+        private boolean has(long flag) { return (flags & flag) != 0; }
 
         public String getType() { return material; }
-        protected void setType(String material) { this.material = material.toUpperCase(Locale.ROOT); }
         public short getDurability() { return data; }
-        protected void setDurability(short durability) { this.data = durability; }
         public int getCustomData() { return customData; }
-        protected void setCustomData(int customData) { this.customData = customData; }
         public int getAmount() { return amount; }
-        protected void setAmount(int amount) { this.amount = amount; }
-        public boolean isAmountValid() { return amountValid; }
-        protected void setAmountValid(boolean valid) { this.amountValid = valid; }
+        public boolean isAmountValid() { return !has(AMOUNT_INVALID); }
         public String getName() { return name; }
-        protected void setName(String name) { this.name = name; }
         public String getLore() { return lore; }
-        protected void setLore(String lore) { this.lore = lore; }
+        TermAutomaton getNameTerms() { return nameTerms; }
+        TermAutomaton getLoreTerms() { return loreTerms; }
         public String getMaterialString() { return materialString; }
-        protected void setMaterialString(String materialString) { this.materialString = materialString; }
-        protected void setEnchantments(HashMap<Enchantment, Integer> enchantments) { this.enchantments = enchantments; }
-        public HashMap<Enchantment, Integer> getEnchantments() { return enchantments; }
-        protected void setPotionType(PotionType potionType) { this.potionType = potionType; }
+        /** Allowed materials from mat: lists/globs, mattag: and matcontains:, or null. Read only. */
+        Set<Material> getMaterials() { return materials == null ? null : Collections.unmodifiableSet(materials); }
+        public boolean shouldCheckMaterials() { return materials != null; }
+        EnchantmentSet getEnchantments() { return enchantments; }
         public PotionType getPotionType() { return potionType; }
-        protected void setPotionExtended(boolean potionExtended) { this.potionExtended = potionExtended; }
-        public boolean getPotionExtended() { return potionExtended; }
-        protected void setPotionUpgraded(boolean potionUpgraded) { this.potionUpgraded = potionUpgraded; }
-        public boolean getPotionUpgraded() { return potionUpgraded; }
-        public void setNbtStrings(Map<String, String> nbtStrings) { this.nbtStrings = nbtStrings; }
-        public Map<String, String> getNbtStrings() { return nbtStrings; }
-        public void setNbtInts(Map<String, Integer> nbtInts) { this.nbtInts = nbtInts; }
-        public Map<String, Integer> getNbtInts() { return nbtInts; }
-        protected void setCheckDurability(boolean b) { this.checkDurability = b; }
-        public boolean shouldCheckDurability() { return checkDurability; }
-        protected void setCheckCustomData(boolean b) { this.checkCustomData = b; }
-        public boolean shouldCheckCustomData() { return checkCustomData; }
-        protected void setCheckAmount(boolean b) { this.checkAmount = b; }
-        public boolean shouldCheckAmount() { return checkAmount; }
-        protected void setCheckNameContains(boolean b) { this.checkNameContains = b; }
-        public boolean shouldCheckNameContains() { return checkNameContains; }
-        protected void setCheckNameStartsWith(boolean b) { this.checkNameStartsWith = b; }
-        public boolean shouldCheckNameStartsWith() { return checkNameStartsWith; }
-        protected void setCheckNameEquals(boolean b) { this.checkNameEquals = b; }
-        public boolean shouldCheckNameEquals() { return checkNameEquals; }
-        protected void setCheckLoreContains(boolean b) { this.checkLoreContains = b; }
-        public boolean shouldCheckLoreContains() { return checkLoreContains; }
-        protected void setCheckLoreEquals(boolean b) { this.checkLoreEquals = b; }
-        public boolean shouldCheckLoreEquals() { return checkLoreEquals; }
-        protected void setCheckMaterialContains(boolean b) { this.checkMaterialContains = b; }
-        public boolean shouldCheckMaterialContains() { return checkMaterialContains; }
-        protected void setCheckType(boolean b) { this.checkType = b; }
-        public boolean shouldCheckType() { return checkType; }
-        protected void setCheckMainHand(boolean b) { this.checkMainHand = b; }
-        public boolean shouldCheckMainHand() { return checkMainHand; }
-        protected void setCheckOffHand(boolean b) { this.checkOffHand = b; }
-        public boolean shouldCheckOffHand() { return checkOffHand; }
-        protected void setIsStrict(boolean b) { this.isStrict = b; }
-        public boolean isStrict() { return isStrict; }
-        protected void setCheckEnchantments(boolean b) { this.checkEnchantments = b; }
-        public boolean shouldCheckEnchantments() { return checkEnchantments; }
-        protected void setCheckEnchanted(boolean b) { this.checkEnchanted = b; }
-        public boolean shouldCheckEnchanted() { return checkEnchanted; }
-        protected void setCheckPotionType(boolean b) { this.checkPotionType = b; }
-        public boolean shouldCheckPotionType() { return checkPotionType; }
-        protected void setCheckPotionExtended(boolean b) { this.checkPotionExtended = b; }
-        public boolean shouldCheckPotionExtended() { return checkPotionExtended; }
-        protected void setCheckPotionUpgraded(boolean b) { this.checkPotionUpgraded = b; }
-        public boolean shouldCheckPotionUpgraded() { return checkPotionUpgraded; }
-        protected void setCheckNbtStrings(boolean b) { this.checkNbtStrings = b; }
-        public boolean shouldCheckNbtStrings() { return checkNbtStrings; }
-        protected void setCheckNbtInts(boolean b) { this.checkNbtInts = b; }
-        public boolean shouldCheckNbtInts() { return checkNbtInts; }
-        protected void setRemove(boolean remove) { this.remove = remove; }
-        public boolean shouldRemove() { return remove; }
-        protected void setSlot(int slot) { this.slot = slot; }
+        public boolean getPotionExtended() { return has(EXTENDED_VALUE); }
+        public boolean getPotionUpgraded() { return has(UPGRADED_VALUE); }
+        List<NbtCriterion> getNbtStrings() { return nbtStrings; }
+        List<NbtCriterion> getNbtInts() { return nbtInts; }
         public int getSlot() { return slot; }
-    }
+        public boolean shouldCheckDurability() { return has(DURABILITY); }
+        public boolean shouldCheckCustomData() { return has(CUSTOM_DATA); }
+        public boolean shouldCheckAmount() { return has(AMOUNT); }
+        public boolean shouldCheckNameContains() { return has(NAME_CONTAINS); }
+        public boolean shouldCheckNameStartsWith() { return has(NAME_STARTS_WITH); }
+        public boolean shouldCheckNameEquals() { return has(NAME_EQUALS); }
+        public boolean shouldCheckLoreContains() { return has(LORE_CONTAINS); }
+        public boolean shouldCheckLoreEquals() { return has(LORE_EQUALS); }
+        public boolean shouldCheckNameContainsAny() { return has(NAME_CONTAINS_ANY); }
+        public boolean shouldCheckLoreContainsAny() { return has(LORE_CONTAINS_ANY); }
+        public boolean shouldCheckMaterialContains() { return has(MATERIAL_CONTAINS); }
+        public boolean shouldCheckType() { return has(TYPE); }
+        public boolean shouldCheckMainHand() { return has(MAIN_HAND); }
+        public boolean shouldCheckOffHand() { return has(OFF_HAND); }
+        public boolean isStrict() { return has(STRICT); }
+        public boolean shouldCheckEnchantments() { return has(ENCHANTMENTS); }
+        public boolean shouldCheckEnchanted() { return has(ENCHANTED); }
+        public boolean shouldCheckPotionType() { return has(POTION_TYPE); }
+        public boolean shouldCheckPotionExtended() { return has(POTION_EXTENDED); }
+        public boolean shouldCheckPotionUpgraded() { return has(POTION_UPGRADED); }
+        public boolean shouldCheckNbtStrings() { return has(NBT_STRINGS); }
+        public boolean shouldCheckNbtInts() { return has(NBT_INTS); }
+
+        CompiledMatcher getMatcher() { return matcher; }
+        void setMatcher(CompiledMatcher matcher) { this.matcher = matcher; }
+
+        /** Mutable side of parsing; {@link #build(boolean)} snapshots it into an ItemWrapper. */
+        static final class Builder {
+            private long flags;
+            private short data;
+            private int customData;
+            private int amount;
+            private int slot = -1;
+            private String material;
+            private String name;
+            private String lore;
+            private String materialString;
+            private TermAutomaton nameTerms;
+            private TermAutomaton loreTerms;
+            private EnumSet<Material> materials;
+            private EnchantmentSet enchantments;
+            private PotionType potionType;
+            private List<NbtCriterion> nbtStrings = List.of();
+            private List<NbtCriterion> nbtInts = List.of();
+
+            private Builder() {}
+
+            private Builder(ItemWrapper w) {
+                flags = w.flags;
+                data = w.data;
+                customData = w.customData;
+                amount = w.amount;
+                slot = w.slot;
+                material = w.material;
+                name = w.name;
+                lore = w.lore;
+                materialString = w.materialString;
+                nameTerms = w.nameTerms;
+                loreTerms = w.loreTerms;
+                materials = w.materials == null ? null : w.materials.clone();
+                enchantments = w.enchantments;
+                potionType = w.potionType;
+                nbtStrings = w.nbtStrings;
+                nbtInts = w.nbtInts;
+            }
+
+            /** {@code intern} for specs kept in the parse cache; per-request bindings skip it. */
+            ItemWrapper build(boolean intern) { return new ItemWrapper(this, intern); }
 
-    private record PotionReflectionInfo(String type, boolean extended, boolean upgraded){}
+            private void flag(long flag, boolean on) {
+                flags = on ? flags | flag : flags & ~flag;
+            }
+
+            void setType(String material) { this.material = material.toUpperCase(Locale.ROOT); }
+            void setDurability(short durability) { this.data = durability; }
+            void setCustomData(int customData) { this.customData = customData; }
+            void setAmount(int amount) { this.amount = amount; }
+            void setAmountValid(boolean valid) { flag(AMOUNT_INVALID, !valid); }
+            void setName(String name) { this.name = name; }
+            void setLore(String lore) { this.lore = lore; }
+            void setNameTerms(TermAutomaton nameTerms) { this.nameTerms = nameTerms; }
+            void setLoreTerms(TermAutomaton loreTerms) { this.loreTerms = loreTerms; }
+            void setMaterialString(String materialString) { this.materialString = materialString; }
+            /** Each material modifier narrows the set further. */
+            void restrictMaterials(EnumSet<Material> allowed) {
+                EnumSet<Material> next = EnumSet.copyOf(allowed);
+                if (materials != null) next.retainAll(materials);
+                materials = next;
+            }
+            void setEnchantments(EnchantmentSet enchantments) { this.enchantments = enchantments; }
+            void setPotionType(PotionType potionType) { this.potionType = potionType; }
+            void setPotionExtended(boolean b) { flag(EXTENDED_VALUE, b); }
+            void setPotionUpgraded(boolean b) { flag(UPGRADED_VALUE, b); }
+            void setNbtStrings(List<NbtCriterion> nbtStrings) { this.nbtStrings = nbtStrings; }
+            void setNbtInts(List<NbtCriterion> nbtInts) { this.nbtInts = nbtInts; }
+            void setSlot(int slot) { this.slot = slot; }
+            void setCheckDurability(boolean b) { flag(DURABILITY, b); }
+            void setCheckCustomData(boolean b) { flag(CUSTOM_DATA, b); }
+            void setCheckAmount(boolean b) { flag(AMOUNT, b); }
+            void setCheckNameContains(boolean b) { flag(NAME_CONTAINS, b); }
+            void setCheckNameStartsWith(boolean b) { flag(NAME_STARTS_WITH, b); }
+            void setCheckNameEquals(boolean b) { flag(NAME_EQUALS, b); }
+            void setCheckLoreContains(boolean b) { flag(LORE_CONTAINS, b); }
+            void setCheckLoreEquals(boolean b) { flag(LORE_EQUALS, b); }
+            void setCheckNameContainsAny(boolean b) { flag(NAME_CONTAINS_ANY, b); }
+            void setCheckLoreContainsAny(boolean b) { flag(LORE_CONTAINS_ANY, b); }
+            void setCheckMaterialContains(boolean b) { flag(MATERIAL_CONTAINS, b); }
+            void setCheckType(boolean b) { flag(TYPE, b); }
+            void setCheckMainHand(boolean b) { flag(MAIN_HAND, b); }
+            void setCheckOffHand(boolean b) { flag(OFF_HAND, b); }
+            void setIsStrict(boolean b) { flag(STRICT, b); }
+            void setCheckEnchantments(boolean b) { flag(ENCHANTMENTS, b); }
+            void setCheckEnchanted(boolean b) { flag(ENCHANTED, b); }
+            void setCheckPotionType(boolean b) { flag(POTION_TYPE, b); }
+            void setCheckPotionExtended(boolean b) { flag(POTION_EXTENDED, b); }
+            void setCheckPotionUpgraded(boolean b) { flag(POTION_UPGRADED, b); }
+            void setCheckNbtStrings(boolean b) { flag(NBT_STRINGS, b); }
+            void setCheckNbtInts(boolean b) { flag(NBT_INTS, b); }
+        }
+    }
 
     @Override public boolean canRegister() { return true; }
     @Override public String getAuthor() { return AUTHOR; }
@@ -223,8 +533,35 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             return "%" + getIdentifier() + "_" + args + "%";
         }
         ensureCache();
+        if (args.startsWith("stats_")) {
+            MetricsRegistry registry = metrics;
+            if (registry == null) return null;
+            return registry.get(args.substring("stats_".length()), this::getParseCacheStats, this::getResultCacheStats);
+        }
 
-        args = resolveAllPlaceholders(p, args);
+        MetricsRegistry registry = metrics;
+        if (registry == null) return handleRequest(p, args);
+        long start = System.nanoTime();
+        try {
+            return handleRequest(p, args);
+        } finally {
+            registry.recordLatency(requestMode(args), System.nanoTime() - start);
+        }
+    }
+
+    private static MetricsRegistry.Mode requestMode(String args) {
+        if (args.startsWith("give_") || args.startsWith("canfit_")) return MetricsRegistry.Mode.GIVE;
+        if (args.startsWith("getinfo:")) return MetricsRegistry.Mode.GETINFO;
+        if (args.startsWith("multi_")) return MetricsRegistry.Mode.MULTI;
+        if (args.startsWith("exchange_")) return MetricsRegistry.Mode.EXCHANGE;
+        if (args.startsWith("server_amount_")) return MetricsRegistry.Mode.SERVER;
+        if (args.startsWith("remove_") || args.startsWith("amount_remove_")) return MetricsRegistry.Mode.REMOVE;
+        if (args.startsWith("amount_")) return MetricsRegistry.Mode.AMOUNT;
+        return MetricsRegistry.Mode.CHECK;
+    }
+
+    private String handleRequest(Player p, String args) {
+        PlaceholderResolver resolver = new PlaceholderResolver(p);
 
         boolean amountMode = false;
         boolean removeFlag = false;
@@ -233,15 +570,38 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             if (!(boolean) get("give_enabled", true)) {
                 return MSG_GIVE_DISABLED;
             }
-            String clean = ChatColor.translateAlternateColorCodes('&', args.substring("give_".length()));
-            clean = resolveAllPlaceholders(p, clean);
-            ItemWrapper w = getWrapper(new ItemWrapper(), clean, p);
-            if (w == null) return null;
-            return giveItem(w, p);
+            GiveSpec give = giveSpec(args.substring("give_".length()), resolver);
+            if (give == null) return null;
+            return giveItem(give, p);
         }
 
         if (args.startsWith("getinfo:")) {
-            return handleGetInfo(p, args.substring("getinfo:".length()), new ItemWrapper());
+            return handleGetInfo(p, args.substring("getinfo:".length()), resolver);
+        }
+
+        if (args.startsWith("canfit_")) {
+            GiveSpec give = giveSpec(args.substring("canfit_".length()), resolver);
+            if (give == null) return null;
+            return canFit(give, p);
+        }
+
+        if (args.startsWith("exchange_")) {
+            if (!(boolean) get("give_enabled", true)) {
+                return MSG_GIVE_DISABLED;
+            }
+            if (!(boolean) get("remove_enabled", true)) {
+                return MSG_REMOVE_DISABLED;
+            }
+            return exchange(p, args.substring("exchange_".length()), resolver);
+        }
+
+        if (args.startsWith("multi_")) {
+            List<String> results = evaluateBatch(p, splitSpecs(args.substring("multi_".length())), resolver);
+            return String.join(String.valueOf(get("multi_result_separator", ",")), results);
+        }
+
+        if (args.startsWith("server_amount_")) {
+            return serverAmount(args.substring("server_amount_".length()), resolver);
         }
 
         if (args.startsWith("amount_")) {
@@ -258,63 +618,218 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         }
 
         final String finalArgs = ChatColor.translateAlternateColorCodes('&', args);
-        boolean cacheable = cacheEnabled
-                && !finalArgs.matches(DYNAMIC_ARG_REGEX)
-                && !removeFlag;
+        SpecTemplate template = templateFor(finalArgs, resolver);
+        String[] holeValues = resolveHoles(template, resolver);
 
-        ItemWrapper wrapper = cacheable
-                ? parseCache.get(finalArgs, key -> getWrapper(new ItemWrapper(), key, p))
-                : getWrapper(new ItemWrapper(), finalArgs, p);
+        String resultKey = removeFlag ? null : resultKey(p, amountMode, finalArgs, holeValues);
+        if (resultKey != null) {
+            String cached = resultCache.getIfPresent(resultKey);
+            if (cached != null) return cached;
+        }
 
+        ItemWrapper wrapper = instantiate(template, holeValues, resolver);
         if (wrapper == null) return null;
-        if (removeFlag) wrapper.setRemove(true);
 
-        ItemStack[] itemsToCheck = resolveItemsToCheck(p, wrapper);
+        String result = evaluate(wrapper, p, amountMode, removeFlag);
+        if (resultKey != null) resultCache.put(resultKey, result);
+        return result;
+    }
+
+    /**
+     * Sums {@code amount_} over every online player. Placeholders in the spec are resolved
+     * against the requesting player, and the total is shared until the configured interval passes.
+     */
+    private String serverAmount(String spec, PlaceholderResolver resolver) {
+        ServerAmounts amounts = serverAmounts;
+        if (amounts == null) return RESULT_ERROR;
+        String args = ChatColor.translateAlternateColorCodes('&', spec);
+        SpecTemplate template = templateFor(args, resolver);
+        String[] holeValues = resolveHoles(template, resolver);
+        ItemWrapper wrapper = instantiate(template, holeValues, resolver);
+        if (wrapper == null) return null;
+        Long total = amounts.amount(specKey(args, holeValues), matcherFor(wrapper),
+                p -> stacksAt(p, slotsToCheck(p, wrapper, false), false));
+        return total != null ? String.valueOf(total) : String.valueOf(get("server_loading_text", "loading"));
+    }
 
+    private String evaluate(ItemWrapper wrapper, Player p, boolean amountMode, boolean remove) {
+        // Removal never trusts cached attributes: a stale match would take the wrong stack.
+        StackAttributeCache.Line attrs = remove ? null : attributesOf(p, false);
+        int[] slots = slotsToCheck(p, wrapper, remove);
+        ItemStack[] itemsToCheck = stacksAt(p, slots, remove);
         if (amountMode) {
-            return String.valueOf(getItemAmount(wrapper, p, itemsToCheck));
+            return String.valueOf(getItemAmount(wrapper, p, slots, itemsToCheck, attrs, remove));
         }
-        return checkItem(wrapper, p, itemsToCheck)
+        return checkItem(wrapper, p, slots, itemsToCheck, attrs, remove)
                 ? PlaceholderAPIPlugin.booleanTrue()
                 : PlaceholderAPIPlugin.booleanFalse();
     }
 
-    private String handleGetInfo(Player p, String argRest, ItemWrapper wrapper) {
+    /**
+     * Evaluates several check / {@code amount_} specs against one inventory pass and returns
+     * their results in order. Specs that resolve to the same text are counted once, and each
+     * stack's meta and NBT are read at most once for all specs. Any other mode ({@code remove_},
+     * {@code give_}, {@code getinfo:}, {@code canfit_}, {@code exchange_}, {@code multi_},
+     * {@code server_amount_}, {@code stats_}) is not allowed in a batch and yields {@code error}.
+     */
+    public List<String> evaluateAll(Player p, List<String> specs) {
+        ensureCache();
+        return evaluateBatch(p, specs, new PlaceholderResolver(p));
+    }
+
+    private static boolean hasModePrefix(String spec) {
+        for (String prefix : NON_BATCH_PREFIXES) {
+            if (spec.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private List<String> evaluateBatch(Player p, List<String> specs, PlaceholderResolver resolver) {
+        int n = specs.size();
+        String[] results = new String[n];
+        String[] keys = new String[n];
+        boolean[] amountMode = new boolean[n];
+        ItemWrapper[] wrappers = new ItemWrapper[n];
+        int[] matcherIndex = new int[n];
+        Arrays.fill(matcherIndex, -1);
+        List<CompiledMatcher> matchers = new ArrayList<>();
+        Map<String, Integer> matcherIds = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            String spec = specs.get(i);
+            if (spec.startsWith("amount_")) {
+                amountMode[i] = true;
+                spec = spec.substring("amount_".length());
+            }
+            if (hasModePrefix(spec)) {
+                results[i] = RESULT_ERROR;
+                continue;
+            }
+            String args = ChatColor.translateAlternateColorCodes('&', spec);
+            SpecTemplate template = templateFor(args, resolver);
+            String[] holeValues = resolveHoles(template, resolver);
+            keys[i] = resultKey(p, amountMode[i], args, holeValues);
+            if (keys[i] != null) {
+                String cached = resultCache.getIfPresent(keys[i]);
+                if (cached != null) {
+                    results[i] = cached;
+                    keys[i] = null;
+                    continue;
+                }
+            }
+
+            ItemWrapper w = instantiate(template, holeValues, resolver);
+            if (w.shouldCheckMainHand() || w.shouldCheckOffHand() || w.getSlot() != -1) {
+                results[i] = evaluate(w, p, amountMode[i], false);
+                continue;
+            }
+            // CompiledMatcher has identity equality: dedupe on the resolved spec instead.
+            int idx = matcherIds.computeIfAbsent(specKey(args, holeValues), k -> {
+                matchers.add(matcherFor(w));
+                return matchers.size() - 1;
+            });
+            wrappers[i] = w;
+            matcherIndex[i] = idx;
+        }
+
+        if (!matchers.isEmpty()) {
+            StackAttributeCache.Line attrs = attributesOf(p, false);
+            int[] totals = countAll(matchers, contentsOf(p, false), attrs);
+            for (int i = 0; i < n; i++) {
+                if (matcherIndex[i] < 0) continue;
+                int total = totals[matcherIndex[i]];
+                if (amountMode[i]) {
+                    results[i] = String.valueOf(total);
+                } else {
+                    results[i] = checkTotal(wrappers[i], total)
+                            ? PlaceholderAPIPlugin.booleanTrue()
+                            : PlaceholderAPIPlugin.booleanFalse();
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (keys[i] != null && results[i] != null) resultCache.put(keys[i], results[i]);
+        }
+        return Arrays.asList(results);
+    }
+
+    /** One walk over the stacks, feeding every matcher; same air semantics as getItemAmount. */
+    private int[] countAll(List<CompiledMatcher> matchers, ItemStack[] items, StackAttributeCache.Line attrs) {
+        int[] totals = new int[matchers.size()];
+        StackView view = new StackView();
+        recordScan(items.length);
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack stack = items[slot];
+            if (stack == null || stack.getType() == Material.AIR) {
+                for (int m = 0; m < totals.length; m++) {
+                    if (matchers.get(m).matchesAir()) totals[m] = Integer.MAX_VALUE;
+                }
+                continue;
+            }
+            view.reset(stack, attrs, slot);
+            for (int m = 0; m < totals.length; m++) {
+                if (totals[m] == Integer.MAX_VALUE) continue;
+                if (matchers.get(m).matches(view)) totals[m] += stack.getAmount();
+            }
+        }
+        return totals;
+    }
+
+    private static List<String> splitSpecs(String joined) {
+        List<String> specs = new ArrayList<>();
+        int from = 0;
+        int idx;
+        while ((idx = joined.indexOf(MULTI_SEPARATOR, from)) >= 0) {
+            specs.add(joined.substring(from, idx));
+            from = idx + MULTI_SEPARATOR.length();
+        }
+        specs.add(joined.substring(from));
+        return specs;
+    }
+
+    /**
+     * Key for the result cache: player, inventory version, normalized args and the values
+     * bound to the spec's holes. A new inventory version yields a new key, so stale entries
+     * are simply never read again.
+     */
+    private String resultKey(Player p, boolean amountMode, String args, String[] holeValues) {
+        InventoryTracker tracker = inventoryTracker;
+        if (resultCache == null || tracker == null) return null;
+        UUID id = p.getUniqueId();
+        StringBuilder key = new StringBuilder(args.length() + 64)
+                .append(id).append('|').append(snapshotVersion(p, tracker, false))
+                .append(amountMode ? "|amount|" : "|check|").append(args);
+        for (String v : holeValues) key.append('\u0000').append(v);
+        return key.toString();
+    }
+
+    private String handleGetInfo(Player p, String argRest, PlaceholderResolver resolver) {
         String[] split = argRest.split("_", 2);
-        int slot = resolveSlot(p, split[0]);
+        int slot = resolveSlot(p, resolver.resolve(split[0]));
         if (slot < 0) return MSG_INVALID_SLOT;
 
+        ItemWrapper wrapper;
         boolean multiMod;
         if (split.length == 2) {
-            String params = resolveAllPlaceholders(p, ChatColor.translateAlternateColorCodes('&', split[1]));
-            wrapper = getWrapper(wrapper, params, p);
+            String params = ChatColor.translateAlternateColorCodes('&', split[1]);
+            wrapper = getWrapper(params, resolver);
             multiMod = params.split(",").length > 1;
         } else {
-            wrapper.setCheckNameContains(true);
-            wrapper.setCheckType(true);
-            wrapper.setCheckAmount(true);
-            wrapper.setCheckDurability(true);
-            wrapper.setCheckCustomData(true);
-            wrapper.setCheckLoreContains(true);
-            wrapper.setCheckEnchantments(true);
-            wrapper.setCheckEnchanted(true);
-            wrapper.setCheckPotionType(true);
-            wrapper.setCheckPotionExtended(true);
-            wrapper.setCheckPotionUpgraded(true);
-            wrapper.setCheckNbtStrings(true);
-            wrapper = getWrapper(wrapper, "", p);
+            wrapper = GETINFO_ALL;
             multiMod = true;
         }
 
-        ItemStack item = p.getInventory().getItem(slot);
+        StackAttributeCache.Line attrs = attributesOf(p, false);
+        ItemStack item = itemAt(p, slot, false);
         if (item == null) return "";
-        return buildItemInfo(wrapper, item, multiMod);
+        return buildItemInfo(wrapper, new StackView().reset(item, attrs, slot), multiMod);
     }
 
     private int resolveSlot(Player p, String raw) {
         return switch (raw) {
-            case "mainhand" -> p.getInventory().getHeldItemSlot();
-            case "offhand" -> 40;
+            case "mainhand" -> heldSlotOf(p, false);
+            case "offhand" -> OFF_HAND_SLOT;
             default -> {
                 try { yield Integer.parseInt(raw); }
                 catch (NumberFormatException e) { yield -1; }
@@ -322,33 +837,36 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         };
     }
 
-    private String buildItemInfo(ItemWrapper wrapper, ItemStack item, boolean multiMod) {
+    private String buildItemInfo(ItemWrapper wrapper, StackView view, boolean multiMod) {
         StringBuilder sb = new StringBuilder();
-        ItemMeta meta = item.getItemMeta();
+        ItemStack item = view.stack();
+        boolean metaInfo = wrapper.shouldCheckNameContains() || wrapper.shouldCheckNameEquals()
+                || wrapper.shouldCheckNameStartsWith() || wrapper.shouldCheckNameContainsAny()
+                || wrapper.shouldCheckCustomData()
+                || wrapper.shouldCheckLoreContains() || wrapper.shouldCheckLoreEquals()
+                || wrapper.shouldCheckLoreContainsAny()
+                || wrapper.shouldCheckEnchantments() || wrapper.shouldCheckEnchanted()
+                || wrapper.shouldCheckPotionType() || wrapper.shouldCheckPotionExtended()
+                || wrapper.shouldCheckPotionUpgraded() || wrapper.shouldCheckDurability();
+        ItemMeta meta = metaInfo ? view.meta() : null;
 
         if (meta != null) {
             if ((wrapper.shouldCheckNameContains()
                     || wrapper.shouldCheckNameEquals()
-                    || wrapper.shouldCheckNameStartsWith())
-                    && meta.hasDisplayName()) {
-                label(sb, multiMod, "name:").append(meta.getDisplayName()).append(" &r");
+                    || wrapper.shouldCheckNameStartsWith()
+                    || wrapper.shouldCheckNameContainsAny())
+                    && view.displayName() != null) {
+                label(sb, multiMod, "name:").append(view.displayName()).append(" &r");
             }
             if (wrapper.shouldCheckCustomData() && meta.hasCustomModelData()) {
                 label(sb, multiMod, "custommodeldata:").append(meta.getCustomModelData()).append(" &r");
             }
-            if ((wrapper.shouldCheckLoreContains() || wrapper.shouldCheckLoreEquals()) && meta.hasLore()) {
-                label(sb, multiMod, "lore:");
-                List<String> loreLines = meta.getLore();
-                if (loreLines != null) {
-                    for (int i = 0; i < loreLines.size(); i++) {
-                        sb.append(loreLines.get(i));
-                        if (i < loreLines.size() - 1) sb.append("|");
-                    }
-                }
-                sb.append(" &r");
+            if ((wrapper.shouldCheckLoreContains() || wrapper.shouldCheckLoreEquals()
+                    || wrapper.shouldCheckLoreContainsAny()) && view.lore() != null) {
+                label(sb, multiMod, "lore:").append(view.joinedLore()).append(" &r");
             }
             if (wrapper.shouldCheckEnchantments()) {
-                appendEnchantmentsInfo(wrapper, item, meta, sb, multiMod);
+                appendEnchantmentsInfo(wrapper, meta, sb, multiMod);
             }
             if (wrapper.shouldCheckEnchanted()) {
                 boolean enchanted = meta.hasEnchants()
@@ -358,8 +876,8 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             if ((wrapper.shouldCheckPotionType()
                     || wrapper.shouldCheckPotionExtended()
                     || wrapper.shouldCheckPotionUpgraded())
-                    && meta instanceof PotionMeta pm) {
-                PotionReflectionInfo info = readPotionMeta(pm);
+                    && meta instanceof PotionMeta) {
+                PotionAccess.PotionInfo info = view.potion();
                 if (info != null) {
                     if (wrapper.shouldCheckPotionType()) {
                         label(sb, multiMod, "potiontype:").append(info.type()).append(" &r");
@@ -374,7 +892,7 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             }
         }
 
-        if (wrapper.shouldCheckType()) {
+        if (wrapper.shouldCheckType() || wrapper.shouldCheckMaterials()) {
             label(sb, multiMod, "mat:").append(item.getType()).append(" &r");
         }
         if (wrapper.shouldCheckAmount()) {
@@ -402,7 +920,7 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         return sb;
     }
 
-    private void appendEnchantmentsInfo(ItemWrapper wrapper, ItemStack item, ItemMeta meta, StringBuilder sb, boolean multiMod) {
+    private void appendEnchantmentsInfo(ItemWrapper wrapper, ItemMeta meta, StringBuilder sb, boolean multiMod) {
         if (!meta.hasEnchants()
                 && (!(meta instanceof EnchantmentStorageMeta)
                 || !((EnchantmentStorageMeta) meta).hasStoredEnchants())) {
@@ -417,13 +935,8 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
                 : meta.getEnchants();
 
         if (!multiMod && wrapper.getEnchantments() != null && wrapper.getEnchantments().size() == 1) {
-            for (Entry<Enchantment, Integer> e : wrapper.getEnchantments().entrySet()) {
-                if (enchants.containsKey(e.getKey())) {
-                    sb.append(enchants.get(e.getKey()));
-                    return;
-                }
-            }
-            sb.append("0");
+            Integer level = enchants.get(wrapper.getEnchantments().enchantment(0));
+            sb.append(level != null ? level : 0);
         } else {
             label(sb, multiMod, "enchantments:");
             int i = 0;
@@ -444,14 +957,12 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             if (wrapper.shouldCheckNbtInts() && wrapper.getNbtInts() != null)
                 criteriaCount += wrapper.getNbtInts().size();
             if (criteriaCount == 1) {
-                if (wrapper.shouldCheckNbtStrings()) {
-                    for (Entry<String, String> e : wrapper.getNbtStrings().entrySet()) {
-                        sb.append(resolveSingleNbtString(nbtItem, e.getKey()));
-                    }
-                } else {
-                    for (Entry<String, Integer> e : wrapper.getNbtInts().entrySet()) {
-                        sb.append(resolveSingleNbtInt(nbtItem, e.getKey()));
-                    }
+                List<NbtCriterion> criteria = wrapper.shouldCheckNbtStrings() && wrapper.getNbtStrings() != null
+                        && !wrapper.getNbtStrings().isEmpty()
+                        ? wrapper.getNbtStrings()
+                        : wrapper.getNbtInts();
+                for (NbtCriterion c : criteria) {
+                    sb.append(c.read(nbtItem));
                 }
                 return;
             }
@@ -481,30 +992,71 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         }
     }
 
-    private String resolveSingleNbtString(NBTItem nbtItem, String key) {
-        if (key.contains("..")) {
-            String[] s = key.split("\\.\\.");
-            return nbtItem.getCompound(s[0]).getString(s[1]);
-        }
-        return nbtItem.getString(key);
+    /**
+     * Plans the whole amount against one snapshot (similar stacks topped up first, then empty
+     * slots), writes the slots it filled, and returns yes or the exact amount that did not fit.
+     */
+    private String giveItem(GiveSpec give, Player p) {
+        if (give.prototype() == null) return RESULT_ERROR;
+
+        InventoryTransaction tx = new InventoryTransaction(p.getInventory().getContents());
+        int notGiven = tx.add(give.prototype(), giveAmount(give.wrapper()));
+        if (tx.commit(p.getInventory())) markInventoryChanged(p);
+
+        return notGiven == 0 ? RESULT_YES : String.valueOf(notGiven);
+    }
+
+    /** Dry run of giveItem: whether the whole amount would fit right now. */
+    private String canFit(GiveSpec give, Player p) {
+        if (give.prototype() == null) return RESULT_ERROR;
+        InventoryTransaction tx = new InventoryTransaction(p.getInventory().getContents());
+        return tx.add(give.prototype(), giveAmount(give.wrapper())) == 0
+                ? PlaceholderAPIPlugin.booleanTrue()
+                : PlaceholderAPIPlugin.booleanFalse();
     }
 
-    private String resolveSingleNbtInt(NBTItem nbtItem, String key) {
-        if (key.contains("..")) {
-            String[] s = key.split("\\.\\.");
-            return String.valueOf(nbtItem.getCompound(s[0]).getInteger(s[1]));
+    /** A give-style spec and its prototype stack; the prototype is null when it cannot be built. */
+    private record GiveSpec(ItemWrapper wrapper, ItemStack prototype) {}
+
+    /**
+     * Parses a give-style spec and looks its prototype up by resolved spec, building it only on
+     * a miss. Prototypes are shared and never mutated: callers place clones of them.
+     */
+    private GiveSpec giveSpec(String rawSpec, PlaceholderResolver resolver) {
+        String spec = ChatColor.translateAlternateColorCodes('&', rawSpec);
+        SpecTemplate template = templateFor(spec, resolver);
+        String[] holeValues = resolveHoles(template, resolver);
+        ItemWrapper wrapper = instantiate(template, holeValues, resolver);
+        if (wrapper == null) return null;
+
+        PlaceholderCache cache = giveCache;
+        if (cache == null) return new GiveSpec(wrapper, buildGiveItem(wrapper));
+        String key = specKey(spec, holeValues);
+        ItemStack prototype = cache.getIfPresent(key);
+        if (prototype == null) {
+            prototype = buildGiveItem(wrapper);
+            if (prototype != null) cache.put(key, prototype);
         }
-        return String.valueOf(nbtItem.getInteger(key));
+        return new GiveSpec(wrapper, prototype);
+    }
+
+    private static String specKey(String spec, String[] holeValues) {
+        return holeValues.length == 0 ? spec : spec + '\u0000' + String.join("\u0000", holeValues);
     }
 
+    private static int giveAmount(ItemWrapper wrapper) {
+        return wrapper.shouldCheckAmount() ? Math.max(0, wrapper.getAmount()) : 1;
+    }
+
+    /** The stack a give_ spec describes (amount 1), or null when the material or meta is unusable. */
     @SuppressWarnings({"deprecation","removal","rawtypes","unchecked"})
-    private String giveItem(ItemWrapper wrapper, Player p) {
+    private ItemStack buildGiveItem(ItemWrapper wrapper) {
         Material mat = Material.getMaterial(wrapper.getType());
-        if (mat == null) return RESULT_ERROR;
+        if (mat == null) return null;
 
         ItemStack item = new ItemStack(mat);
         ItemMeta meta = item.getItemMeta();
-        if (meta == null) return RESULT_ERROR;
+        if (meta == null) return null;
 
         if (wrapper.shouldCheckDurability()) {
             if (meta instanceof Damageable dmg) {
@@ -520,147 +1072,195 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
             meta.setLore(lore);
         }
         if (wrapper.shouldCheckEnchantments() && wrapper.getEnchantments() != null) {
-            wrapper.getEnchantments().forEach((ench, level) -> {
-                if (ench != null) meta.addEnchant(ench, (level == -1 ? 1 : level), true);
-            });
+            EnchantmentSet enchants = wrapper.getEnchantments();
+            for (int i = 0; i < enchants.size(); i++) {
+                int level = enchants.level(i);
+                meta.addEnchant(enchants.enchantment(i), level == EnchantmentSet.ANY_LEVEL ? 1 : level, true);
+            }
         }
         if ((wrapper.shouldCheckPotionType()
                 || wrapper.shouldCheckPotionExtended()
                 || wrapper.shouldCheckPotionUpgraded())
                 && meta instanceof PotionMeta pm
                 && wrapper.getPotionType() != null) {
-            try {
-                Class<?> potionDataClass = Class.forName("org.bukkit.potion.PotionData");
-                Constructor<?> ctor = potionDataClass.getConstructor(PotionType.class, boolean.class, boolean.class);
-                Object potionDataInstance = ctor.newInstance(wrapper.getPotionType(),
-                        wrapper.getPotionExtended(), wrapper.getPotionUpgraded());
-                Method setBasePotionData = PotionMeta.class.getMethod("setBasePotionData", potionDataClass);
-                setBasePotionData.invoke(pm, potionDataInstance);
-            } catch (Throwable ignored) {}
+            PotionAccess.INSTANCE.write(pm, wrapper.getPotionType(),
+                    wrapper.getPotionExtended(), wrapper.getPotionUpgraded());
         }
         item.setItemMeta(meta);
 
         if (wrapper.shouldCheckNbtStrings() || wrapper.shouldCheckNbtInts()) {
             NBTItem nbtItem = new NBTItem(item);
             if (wrapper.shouldCheckNbtStrings() && wrapper.getNbtStrings() != null) {
-                for (Entry<String, String> e : wrapper.getNbtStrings().entrySet()) {
-                    applyNbtSetString(nbtItem, e.getKey(), e.getValue());
-                }
+                for (NbtCriterion c : wrapper.getNbtStrings()) c.apply(nbtItem);
             }
             if (wrapper.shouldCheckNbtInts() && wrapper.getNbtInts() != null) {
-                for (Entry<String, Integer> e : wrapper.getNbtInts().entrySet()) {
-                    applyNbtSetInt(nbtItem, e.getKey(), e.getValue());
-                }
+                for (NbtCriterion c : wrapper.getNbtInts()) c.apply(nbtItem);
             }
             item = nbtItem.getItem();
         }
-
-        if (wrapper.shouldCheckAmount()) {
-            distributeItemAmount(p, item, wrapper.getAmount());
-        } else {
-            p.getInventory().addItem(item);
-        }
-
-        return RESULT_YES;
+        return item;
     }
 
-    private void distributeItemAmount(Player p, ItemStack prototype, int total) {
-        int maxStack = prototype.getMaxStackSize();
-        int remaining = total;
-        while (remaining > 0) {
-            int give = Math.min(remaining, maxStack);
-            ItemStack stack = prototype.clone();
-            stack.setAmount(give);
-            Map<Integer, ItemStack> leftover = p.getInventory().addItem(stack);
-            remaining -= give;
-            if (!leftover.isEmpty()) break;
+    /**
+     * {@code <remove>||<remove>>><give>||<give>}: every remove spec is taken and every give spec
+     * placed against one snapshot, then the changed slots are written together. If any remove
+     * lacks items or any give lacks room, nothing is written and the result is false.
+     */
+    private String exchange(Player p, String spec, PlaceholderResolver resolver) {
+        int arrow = spec.indexOf(EXCHANGE_ARROW);
+        if (arrow < 0) return RESULT_ERROR;
+        InventoryTransaction tx = new InventoryTransaction(p.getInventory().getContents());
+
+        for (String removeSpec : splitSpecs(spec.substring(0, arrow))) {
+            if (removeSpec.isEmpty()) continue;
+            ItemWrapper w = getWrapper(ChatColor.translateAlternateColorCodes('&', removeSpec), resolver);
+            if (w == null) return RESULT_ERROR;
+            if (w.shouldCheckAmount() && (!w.isAmountValid() || w.getAmount() <= 0)) {
+                return PlaceholderAPIPlugin.booleanFalse();
+            }
+            int amount = w.shouldCheckAmount() ? w.getAmount() : -1;
+            if (!tx.remove(matcherFor(w), slotsToCheck(p, w, true), amount)) {
+                return PlaceholderAPIPlugin.booleanFalse();
+            }
         }
-    }
 
-    private void applyNbtSetString(NBTItem item, String key, String value) {
-        if (key.contains("..")) {
-            String[] s = key.split("\\.\\.");
-            item.addCompound(s[0]).setString(s[1], value);
-        } else {
-            item.setString(key, value);
+        for (String giveArg : splitSpecs(spec.substring(arrow + EXCHANGE_ARROW.length()))) {
+            if (giveArg.isEmpty()) continue;
+            GiveSpec give = giveSpec(giveArg, resolver);
+            if (give == null || give.prototype() == null) return RESULT_ERROR;
+            if (tx.add(give.prototype(), giveAmount(give.wrapper())) > 0) {
+                return PlaceholderAPIPlugin.booleanFalse();
+            }
         }
-    }
 
-    private void applyNbtSetInt(NBTItem item, String key, int value) {
-        if (key.contains("..")) {
-            String[] s = key.split("\\.\\.");
-            item.addCompound(s[0]).setInteger(s[1], value);
-        } else {
-            item.setInteger(key, value);
-        }
+        if (tx.commit(p.getInventory())) markInventoryChanged(p);
+        return PlaceholderAPIPlugin.booleanTrue();
     }
 
-    private boolean checkItem(ItemWrapper wrapper, Player p, ItemStack... items) {
+    private boolean checkItem(ItemWrapper wrapper, Player p, int[] slots, ItemStack[] items,
+                              StackAttributeCache.Line attrs, boolean remove) {
         if (wrapper.shouldCheckAmount() && !wrapper.isAmountValid()) {
             return false;
         }
-        if (wrapper.shouldRemove() && wrapper.shouldCheckAmount() && wrapper.getAmount() <= 0) {
+        if (remove && wrapper.shouldCheckAmount() && wrapper.getAmount() <= 0) {
             return false;
         }
 
-        int total = getItemAmount(wrapper, p, items);
+        return matchesTotal(wrapper, getItemAmount(wrapper, p, slots, items, attrs, remove));
+    }
+
+    /** checkItem's verdict for an already counted total (batch path; never removes). */
+    private boolean checkTotal(ItemWrapper wrapper, int total) {
+        if (wrapper.shouldCheckAmount() && !wrapper.isAmountValid()) {
+            return false;
+        }
+        return matchesTotal(wrapper, total);
+    }
+
+    private boolean matchesTotal(ItemWrapper wrapper, int total) {
         if (wrapper.shouldCheckAmount()) {
             return wrapper.isStrict() ? total == wrapper.getAmount() : total >= wrapper.getAmount();
         }
         return total >= 1;
     }
 
-    private int getItemAmount(ItemWrapper wrapper, Player p, ItemStack... items) {
+    /**
+     * {@code slots[i]} is the inventory slot of {@code items[i]}; null means {@code items} is the
+     * full getContents() array. When {@code remove} is set, matches are recorded as (slot, amount)
+     * pairs and taken. {@code attrs} (may be null) supplies cached stack attributes for those slots.
+     */
+    private int getItemAmount(ItemWrapper wrapper, Player p, int[] slots, ItemStack[] items,
+                              StackAttributeCache.Line attrs, boolean remove) {
+        CompiledMatcher matcher = matcherFor(wrapper);
         int total = 0;
-        List<ItemStack> matched = new ArrayList<>();
+        int[] plan = remove ? new int[16] : null;
+        int planSize = 0;
+        StackView view = new StackView();
 
-        for (ItemStack stack : items) {
-            if (stack == null) {
-                if (wrapper.shouldCheckType() && "AIR".equals(wrapper.getType())) {
-                    return Integer.MAX_VALUE;
-                }
+        recordScan(items.length);
+
+        for (int i = 0; i < items.length; i++) {
+            ItemStack stack = items[i];
+            if (stack == null || stack.getType() == Material.AIR) {
+                if (matcher.matchesAir()) return Integer.MAX_VALUE;
                 continue;
             }
-            if (stack.getType() == Material.AIR) {
-                if (wrapper.shouldCheckType() && "AIR".equals(wrapper.getType())) {
-                    return Integer.MAX_VALUE;
-                }
-                continue;
+            int slot = slots == null ? i : slots[i];
+            if (!matcher.matches(view.reset(stack, attrs, slot))) continue;
+
+            int amount = stack.getAmount();
+            total += amount;
+            if (plan != null) {
+                if (planSize == plan.length) plan = Arrays.copyOf(plan, planSize * 2);
+                plan[planSize++] = slot;
+                plan[planSize++] = amount;
             }
-
-            if (!matchesBasic(wrapper, stack)) continue;
-            ItemMeta meta = stack.getItemMeta();
-            if (!matchesMeta(wrapper, meta)) continue;
-            if (!matchesEnchantments(wrapper, meta)) continue;
-            if (!matchesPotions(wrapper, meta)) continue;
-            if (!matchesEnchanted(wrapper, meta)) continue;
-            if (!matchesNbt(wrapper, stack)) continue;
-
-            if (wrapper.isStrict() && wrapper.shouldCheckType() && !matchesStrictWrapper(wrapper, stack, meta)) continue;
-
-            total += stack.getAmount();
-            matched.add(stack);
         }
 
-        if (wrapper.shouldRemove()) total = handleRemoval(wrapper, p, matched, total);
+        if (plan != null) total = handleRemoval(wrapper, p, plan, planSize, total);
         return total;
     }
 
-    private boolean matchesBasic(ItemWrapper w, ItemStack stack) {
-        if (w.shouldCheckType() && !w.getType().equals(stack.getType().name())) return false;
+    private void recordScan(int stacks) {
+        MetricsRegistry registry = metrics;
+        if (registry != null) registry.recordScan(stacks);
+    }
 
-        if (w.shouldCheckDurability()) {
-            ItemMeta meta = stack.getItemMeta();
-            int dmg = 0;
-            if (meta instanceof Damageable d) dmg = d.getDamage();
-            if (dmg != w.getDurability()) return false;
+    private CompiledMatcher matcherFor(ItemWrapper w) {
+        CompiledMatcher matcher = w.getMatcher();
+        if (matcher == null) {
+            matcher = compileMatcher(w);
+            w.setMatcher(matcher);
         }
+        return matcher;
+    }
 
-        if (w.shouldCheckMaterialContains() && !stack.getType().name().contains(w.getMaterialString())) return false;
-        return true;
+    /**
+     * Keeps only the predicates the spec enables, cheapest first; the material is
+     * resolved to its enum here so most stacks are rejected by an identity check.
+     */
+    private CompiledMatcher compileMatcher(ItemWrapper w) {
+        CompiledMatcher.Builder b = CompiledMatcher.builder();
+        if (w.shouldCheckType()) b.material(w.getType());
+        if (w.shouldCheckMaterials()) b.materials(w.getMaterials());
+
+        if (w.shouldCheckDurability()) b.meta(view -> matchesDurability(w, view));
+        if (w.shouldCheckCustomData()
+                || w.shouldCheckNameContains() || w.shouldCheckNameEquals() || w.shouldCheckNameStartsWith()
+                || w.shouldCheckLoreContains() || w.shouldCheckLoreEquals()) {
+            b.meta(view -> matchesMeta(w, view));
+        }
+        if (w.shouldCheckNameContainsAny()) {
+            TermAutomaton terms = w.getNameTerms();
+            b.meta(view -> {
+                String name = view.displayName();
+                return name != null && terms.containsAny(name);
+            });
+        }
+        if (w.shouldCheckLoreContainsAny()) {
+            TermAutomaton terms = w.getLoreTerms();
+            b.meta(view -> matchesAnyLine(terms, view.lore()));
+        }
+        if (w.shouldCheckEnchantments()) b.meta(view -> matchesEnchantments(w, view));
+        if (w.shouldCheckPotionType() || w.shouldCheckPotionExtended() || w.shouldCheckPotionUpgraded()) {
+            b.meta(view -> matchesPotions(w, view));
+        }
+        if (w.shouldCheckEnchanted()) b.meta(view -> matchesEnchanted(w, view));
+        boolean typed = w.shouldCheckType() || (w.shouldCheckMaterials() && !w.shouldCheckMaterialContains());
+        if (w.isStrict() && typed) b.meta(view -> matchesStrictWrapper(w, view));
+
+        if (w.shouldCheckNbtStrings() || w.shouldCheckNbtInts()) b.nbt(view -> matchesNbt(w, view));
+        return b.build();
+    }
+
+    private boolean matchesDurability(ItemWrapper w, StackView view) {
+        int dmg = 0;
+        if (view.meta() instanceof Damageable d) dmg = d.getDamage();
+        return dmg == w.getDurability();
     }
 
-    private boolean matchesMeta(ItemWrapper w, ItemMeta meta) {
+    private boolean matchesMeta(ItemWrapper w, StackView view) {
+        ItemMeta meta = view.meta();
         if (meta == null) {
             return !(w.shouldCheckNameContains() || w.shouldCheckNameEquals() || w.shouldCheckNameStartsWith()
                     || w.shouldCheckLoreContains() || w.shouldCheckLoreEquals()
@@ -673,8 +1273,7 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         }
 
         if (w.shouldCheckLoreContains()) {
-            if (!meta.hasLore()) return false;
-            List<String> loreLines = meta.getLore();
+            List<String> loreLines = view.lore();
             if (loreLines == null) return false;
             boolean match = false;
             for (String line : loreLines) {
@@ -684,48 +1283,41 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         }
 
         if (w.shouldCheckLoreEquals()) {
-            if (!meta.hasLore()) return false;
-            List<String> loreList = meta.getLore();
-            if (loreList == null) return false;
-            String lore = String.join("|", loreList);
-            if (!w.getLore().equals(lore)) return false;
+            String lore = view.joinedLore();
+            if (lore == null || !w.getLore().equals(lore)) return false;
         }
 
+        String name = view.displayName();
         if (w.shouldCheckNameContains()) {
-            if (!(meta.hasDisplayName() && meta.getDisplayName().contains(w.getName()))) return false;
+            if (!(name != null && name.contains(w.getName()))) return false;
         } else if (w.shouldCheckNameStartsWith()) {
-            if (!(meta.hasDisplayName() && meta.getDisplayName().startsWith(w.getName()))) return false;
+            if (!(name != null && name.startsWith(w.getName()))) return false;
         } else if (w.shouldCheckNameEquals()) {
-            if (!(meta.hasDisplayName() && meta.getDisplayName().equals(w.getName()))) return false;
+            if (!(name != null && name.equals(w.getName()))) return false;
         }
 
         return true;
     }
 
-    private boolean matchesEnchantments(ItemWrapper w, ItemMeta meta) {
-        if (!w.shouldCheckEnchantments()) return true;
-        if (meta == null) return false;
-
-        Map<Enchantment, Integer> present = (meta instanceof EnchantmentStorageMeta esm)
-                ? esm.getStoredEnchants()
-                : meta.getEnchants();
-        if (present.isEmpty()) return false;
-
-        for (Entry<Enchantment, Integer> e : w.getEnchantments().entrySet()) {
-            if (!present.containsKey(e.getKey())) return false;
-            if (e.getValue() != -1 && !Objects.equals(present.get(e.getKey()), e.getValue())) return false;
+    private static boolean matchesAnyLine(TermAutomaton terms, List<String> lines) {
+        if (lines == null) return false;
+        for (String line : lines) {
+            if (terms.containsAny(line)) return true;
         }
-        return true;
+        return false;
     }
 
-    @SuppressWarnings({"deprecation","removal","rawtypes","unchecked"})
-    private boolean matchesPotions(ItemWrapper w, ItemMeta meta) {
+    private boolean matchesEnchantments(ItemWrapper w, StackView view) {
+        if (!w.shouldCheckEnchantments()) return true;
+        if (view.enchants().isEmpty()) return false;
+        return w.getEnchantments().matches(view.enchantLevels());
+    }
+
+    private boolean matchesPotions(ItemWrapper w, StackView view) {
         if (!(w.shouldCheckPotionType() || w.shouldCheckPotionExtended() || w.shouldCheckPotionUpgraded())) {
             return true;
         }
-        if (!(meta instanceof PotionMeta pm)) return false;
-
-        PotionReflectionInfo info = readPotionMeta(pm);
+        PotionAccess.PotionInfo info = view.potion();
         if (info == null) return false;
 
         if (w.shouldCheckPotionType()) {
@@ -736,129 +1328,86 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         return true;
     }
 
-    @SuppressWarnings({"removal","deprecation","rawtypes","unchecked"})
-    private PotionReflectionInfo readPotionMeta(PotionMeta pm) {
-        try {
-            Class<?> potionDataClass = Class.forName("org.bukkit.potion.PotionData");
-            Method getBasePotionData = PotionMeta.class.getMethod("getBasePotionData");
-            Object pd = getBasePotionData.invoke(pm);
-            if (pd == null) return null;
-
-            Method getType = potionDataClass.getMethod("getType");
-            Method isExtended = potionDataClass.getMethod("isExtended");
-            Method isUpgraded = potionDataClass.getMethod("isUpgraded");
-
-            Object typeEnum = getType.invoke(pd);
-            String typeName = (typeEnum instanceof Enum<?> e) ? e.name() : String.valueOf(typeEnum);
-            boolean ext = (boolean) isExtended.invoke(pd);
-            boolean upg = (boolean) isUpgraded.invoke(pd);
-            return new PotionReflectionInfo(typeName, ext, upg);
-        } catch (Throwable ignored) {
-            return null;
-        }
-    }
-
-    private boolean matchesEnchanted(ItemWrapper w, ItemMeta meta) {
+    private boolean matchesEnchanted(ItemWrapper w, StackView view) {
         if (!w.shouldCheckEnchanted()) return true;
+        ItemMeta meta = view.meta();
         if (meta == null) return false;
         return meta.hasEnchants() ||
                 (meta instanceof EnchantmentStorageMeta esm && esm.hasStoredEnchants());
     }
 
-    private boolean matchesNbt(ItemWrapper w, ItemStack stack) {
+    private boolean matchesNbt(ItemWrapper w, StackView view) {
         if (!(w.shouldCheckNbtStrings() || w.shouldCheckNbtInts())) return true;
-
-        ReadableNBT nbtReadable;
-        if (USE_COMPONENTS) {
-            nbtReadable = NBT.modifyComponents(stack,
-                    (java.util.function.Function<ReadWriteNBT, ReadableNBT>)
-                            nbt -> nbt.getCompound("minecraft:custom_data"));
-            if (nbtReadable == null) return false;
-        } else {
-            nbtReadable = new NBTItem(stack);
-        }
+        ReadableNBT nbtReadable = view.nbt();
+        if (nbtReadable == null) return false;
 
         if (w.shouldCheckNbtStrings() && w.getNbtStrings() != null) {
-            for (Entry<String, String> entry : w.getNbtStrings().entrySet()) {
-                if (!checkNbtEntryString(entry.getKey(), entry.getValue(), nbtReadable)) return false;
+            for (NbtCriterion c : w.getNbtStrings()) {
+                if (!c.matches(nbtReadable)) return false;
             }
         }
 
         if (w.shouldCheckNbtInts() && w.getNbtInts() != null) {
-            for (Entry<String, Integer> entry : w.getNbtInts().entrySet()) {
-                if (!checkNbtEntryInt(entry.getKey(), entry.getValue(), nbtReadable)) return false;
+            for (NbtCriterion c : w.getNbtInts()) {
+                if (!c.matches(nbtReadable)) return false;
             }
         }
         return true;
     }
 
-    private boolean matchesStrictWrapper(ItemWrapper w, ItemStack stack, ItemMeta meta) {
+    private boolean matchesStrictWrapper(ItemWrapper w, StackView view) {
+        ItemMeta meta = view.meta();
         if (meta == null) return false;
         if (!w.shouldCheckNameContains()
                 && !w.shouldCheckNameEquals()
                 && !w.shouldCheckNameStartsWith()
+                && !w.shouldCheckNameContainsAny()
                 && meta.hasDisplayName()) return false;
-        if (!w.shouldCheckLoreContains() && meta.hasLore()) return false;
+        if (!w.shouldCheckLoreContains() && !w.shouldCheckLoreContainsAny() && meta.hasLore()) return false;
         if (!w.shouldCheckDurability() && meta instanceof Damageable d && d.getDamage() != 0) return false;
-        if (!w.shouldCheckEnchantments() && !stack.getEnchantments().isEmpty()) return false;
+        if (!w.shouldCheckEnchantments() && meta.hasEnchants()) return false;
         return true;
     }
 
-    private int handleRemoval(ItemWrapper w, Player p, List<ItemStack> matched, int total) {
+    /**
+     * Executes the (slot, amount) plan recorded by getItemAmount, touching only matched slots.
+     * Armor and off-hand are drained before storage, as they always were.
+     */
+    private int handleRemoval(ItemWrapper w, Player p, int[] plan, int planSize, int total) {
         boolean remove = true;
         if (w.shouldCheckAmount()) {
             remove = total >= w.getAmount();
             if (remove) total = w.getAmount();
         }
-        if (!remove || matched.isEmpty()) return total;
+        if (!remove || planSize == 0) return total;
 
         int toRemove = w.shouldCheckAmount() ? w.getAmount() : Integer.MAX_VALUE;
-
-        ItemStack[] armor = p.getInventory().getArmorContents();
-        for (int i = 0; i < armor.length && toRemove > 0; i++) {
-            ItemStack piece = armor[i];
-            if (piece != null && matched.contains(piece)) {
-                int amt = piece.getAmount();
-                if (amt > toRemove) {
-                    piece.setAmount(amt - toRemove);
-                    toRemove = 0;
-                } else {
-                    toRemove -= amt;
-                    armor[i] = null;
-                }
-            }
-        }
-        p.getInventory().setArmorContents(armor);
-
-        ItemStack off = p.getInventory().getItemInOffHand();
-        if (off != null && toRemove > 0 && matched.contains(off)) {
-            int amt = off.getAmount();
-            if (amt > toRemove) {
-                off.setAmount(amt - toRemove);
-                toRemove = 0;
-            } else {
-                toRemove -= amt;
-                off = null;
+        markInventoryChanged(p);
+
+        PlayerInventory inv = p.getInventory();
+        for (int pass = 0; pass < 2 && toRemove > 0; pass++) {
+            boolean equipment = pass == 0;
+            for (int i = 0; i < planSize && toRemove > 0; i += 2) {
+                int slot = plan[i];
+                if ((slot >= InventoryTransaction.ARMOR_FIRST_SLOT) != equipment) continue;
+                toRemove = takeFromSlot(inv, slot, plan[i + 1], toRemove);
             }
-            p.getInventory().setItemInOffHand(off);
         }
+        return total;
+    }
 
-        if (toRemove > 0) {
-            for (int slot = 0; slot < p.getInventory().getSize() && toRemove > 0; slot++) {
-                ItemStack current = p.getInventory().getItem(slot);
-                if (current == null) continue;
-                if (!matched.contains(current)) continue;
-                int amt = current.getAmount();
-                if (amt > toRemove) {
-                    current.setAmount(amt - toRemove);
-                    toRemove = 0;
-                } else {
-                    toRemove -= amt;
-                    p.getInventory().clear(slot);
-                }
+    /** One write to {@code slot}: shrink the stack, or clear the slot when it is used up. */
+    private static int takeFromSlot(PlayerInventory inv, int slot, int amount, int toRemove) {
+        if (amount > toRemove) {
+            ItemStack stack = inv.getItem(slot);
+            if (stack != null) {
+                stack.setAmount(amount - toRemove);
+                inv.setItem(slot, stack);
             }
+            return 0;
         }
-        return total;
+        inv.setItem(slot, null);
+        return toRemove - amount;
     }
 
     private int getInt(String s) {
@@ -866,237 +1415,274 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         catch (NumberFormatException ex) { return -1; }
     }
 
-    private ItemWrapper getWrapper(ItemWrapper wrapper, String input, Player p) {
-        input = input.replaceAll("__", " ");
-        input = resolveAllPlaceholders(p, input);
-        if (input.isEmpty()) return wrapper;
-        String[] parts = input.split("(?<!\\\\),");
-        for (String raw : parts) {
-            String part = raw.replace("\\,", ",");
-            if (part.isEmpty()) continue;
-            parseSinglePart(wrapper, part, p);
-        }
-        return wrapper;
+    private SpecTemplate templateFor(String spec, PlaceholderResolver resolver) {
+        return cacheEnabled
+                ? parseCache.get(spec, key -> compileTemplate(key, resolver))
+                : compileTemplate(spec, resolver);
     }
 
-    private void parseSinglePart(ItemWrapper wrapper, String part, Player p) {
-        if (part.startsWith("data:")) {
-            String value = resolveAllPlaceholders(p, part.substring(5));
-            try {
-                int parsed = Integer.parseInt(value);
-                wrapper.setDurability((short) parsed);
-                wrapper.setCheckDurability(true);
-            } catch (NumberFormatException ignored) {}
-            return;
-        }
-        if (part.startsWith("custommodeldata:")) {
-            String v = resolveAllPlaceholders(p, part.substring(15));
-            int parsed = getInt(v);
-            if (parsed >= 0) {
-                wrapper.setCustomData(parsed);
-                wrapper.setCheckCustomData(true);
+    /**
+     * Splits the spec once. Modifiers whose value holds a placeholder become holes;
+     * all the others are applied to the template's base wrapper right away. A placeholder in
+     * a modifier key may expand to several modifiers, so that spec stays whole and is resolved
+     * and parsed per request, as every spec used to be.
+     */
+    private SpecTemplate compileTemplate(String spec, PlaceholderResolver resolver) {
+        ModifierLexer.ErrorSink errors = (pos, msg) ->
+                warning("Invalid checkitem spec '" + spec + "': " + msg + " at position " + pos);
+        List<ModifierLexer.Part> parts = ModifierLexer.parts(spec, ModifierLexer.ErrorSink.IGNORE);
+        for (ModifierLexer.Part part : parts) {
+            String key = part.key();
+            if (PlaceholderResolver.hasPlaceholders(key) || key.indexOf('}') >= 0) return SpecTemplate.whole(spec);
+        }
+        ItemWrapper.Builder base = ItemWrapper.builder();
+        List<String> holeKeys = new ArrayList<>();
+        List<String> holeValues = new ArrayList<>();
+        List<AmountExpression> holeExpressions = new ArrayList<>();
+        for (ModifierLexer.Part part : ModifierLexer.parts(spec, errors)) {
+            String key = part.key();
+            String value = part.value();
+            if (!MODIFIERS.contains(key)) {
+                errors.error(part.position(), "unknown modifier '" + key + "'");
+                continue;
+            }
+            if ("amtexpr".equals(key) && value != null) {
+                AmountExpression expr = AmountExpression.compile(value, part.valueOffset(), errors);
+                if (expr != null && expr.variables() > 0) {
+                    holeKeys.add("amt");
+                    holeValues.add(value);
+                    holeExpressions.add(expr);
+                } else {
+                    setAmount(base, expr == null ? AmountExpression.INVALID : expr.evaluate(new String[0]));
+                }
+                continue;
+            }
+            if (value != null && (PlaceholderResolver.hasPlaceholders(value) || value.indexOf('}') >= 0)) {
+                holeKeys.add(key);
+                holeValues.add(value);
+                holeExpressions.add(null);
+            } else {
+                applyModifier(base, key, value, part.valueOffset(), errors, resolver);
             }
-            return;
         }
-        if (part.startsWith("mat:")) {
-            String v = resolveAllPlaceholders(p, part.substring(4));
-            wrapper.setType(v);
-            wrapper.setCheckType(true);
-            return;
+        return new SpecTemplate(base.build(true), holeKeys, holeValues, holeExpressions);
+    }
+
+    /** Resolves the template's hole values for this request. */
+    private String[] resolveHoles(SpecTemplate t, PlaceholderResolver resolver) {
+        String[] values = new String[t.holes()];
+        for (int i = 0; i < values.length; i++) {
+            AmountExpression expr = t.holeExpression(i);
+            values[i] = expr != null
+                    ? String.valueOf(evaluateAmount(expr, resolver))
+                    : ChatColor.translateAlternateColorCodes('&', resolver.resolve(t.holeValue(i)));
         }
+        return values;
+    }
 
-        // amtexpr: internal arithmetic expression system
-        // Supports wrapper: {cmi_equationint_<expression>}
-        if (part.startsWith("amtexpr:")) {
-            String rawExpr = part.substring(8).trim();
-            rawExpr = resolveAllPlaceholders(p, rawExpr);
+    /**
+     * Binds resolved hole values into a new spec built from the template's base.
+     * A static template returns its shared base, for every mode including remove_.
+     */
+    private ItemWrapper instantiate(SpecTemplate t, String[] values, PlaceholderResolver resolver) {
+        if (t.isWhole()) return parseResolved(values[0], resolver);
+        if (t.isStatic()) return t.base();
+        ItemWrapper.Builder b = t.base().toBuilder();
+        for (int i = 0; i < values.length; i++) {
+            applyModifier(b, t.holeKey(i), values[i], 0, ModifierLexer.ErrorSink.IGNORE, resolver);
+        }
+        return b.build(false);
+    }
 
-            int amount = -1;
-            boolean valid = true;
+    /** Parses an already resolved spec without caching; leftover unknown modifiers are skipped. */
+    private ItemWrapper parseResolved(String spec, PlaceholderResolver resolver) {
+        ItemWrapper.Builder b = ItemWrapper.builder();
+        for (ModifierLexer.Part part : ModifierLexer.parts(spec, ModifierLexer.ErrorSink.IGNORE)) {
+            if (!MODIFIERS.contains(part.key())) continue;
+            applyModifier(b, part.key(), part.value(), 0, ModifierLexer.ErrorSink.IGNORE, resolver);
+        }
+        return b.build(false);
+    }
 
-            if (rawExpr.startsWith("{cmi_equationint_") && rawExpr.endsWith("}")) {
-                String inner = rawExpr.substring(1, rawExpr.length() - 1); // remove {}
-                String exprBody = inner.substring("cmi_equationint_".length());
-                exprBody = exprBody.replaceAll("\\{([a-zA-Z0-9_:\\-]+)\\}", "%$1%");
-                exprBody = resolveAllPlaceholders(p, exprBody);
-                amount = evalExpression(exprBody);
-                if (amount < 0) valid = false;
-            } else {
-                String expr = rawExpr.replaceAll("\\{([a-zA-Z0-9_:\\-]+)\\}", "%$1%");
-                expr = resolveAllPlaceholders(p, expr);
-                amount = evalExpression(expr);
-                if (amount < 0) valid = false;
-            }
+    private ItemWrapper getWrapper(String spec, PlaceholderResolver resolver) {
+        SpecTemplate t = templateFor(spec, resolver);
+        return instantiate(t, resolveHoles(t, resolver), resolver);
+    }
 
-            if (!valid) {
-                wrapper.setAmount(0);
-                wrapper.setAmountValid(false);
-            } else {
-                wrapper.setAmount(amount);
-                wrapper.setAmountValid(true);
+    /**
+     * Applies one modifier. Syntax errors inside list values are reported to {@code errors}
+     * relative to {@code valueOffset}; values bound per request are lexed with IGNORE.
+     */
+    private void applyModifier(ItemWrapper.Builder wrapper, String key, String value, int valueOffset,
+                               ModifierLexer.ErrorSink errors, PlaceholderResolver resolver) {
+        if (value == null) {
+            switch (key) {
+                case "inhand" -> {
+                    wrapper.setCheckMainHand(true);
+                    wrapper.setCheckOffHand(true);
+                }
+                case "strict" -> wrapper.setIsStrict(true);
+                case "enchanted" -> wrapper.setCheckEnchanted(true);
+                default -> {}
             }
-            wrapper.setCheckAmount(true);
             return;
         }
-
-        if (part.startsWith("amt:")) {
-            String v = resolveAllPlaceholders(p, part.substring(4));
-            int parsed = getInt(v);
-            if (parsed >= 0) {
-                wrapper.setAmount(parsed);
-                wrapper.setCheckAmount(true);
-                wrapper.setAmountValid(true);
-            } else {
-                wrapper.setAmount(0);
-                wrapper.setCheckAmount(true);
-                wrapper.setAmountValid(false);
+        switch (key) {
+            case "data" -> {
+                try {
+                    int parsed = Integer.parseInt(value);
+                    wrapper.setDurability((short) parsed);
+                    wrapper.setCheckDurability(true);
+                } catch (NumberFormatException ignored) {}
             }
-            return;
-        }
-        if (part.startsWith("namestartswith:")) {
-            wrapper.setName(resolveAllPlaceholders(p, part.substring(14)));
-            wrapper.setCheckNameStartsWith(true);
-            return;
-        }
-        if (part.startsWith("namecontains:")) {
-            wrapper.setName(resolveAllPlaceholders(p, part.substring(13)));
-            wrapper.setCheckNameContains(true);
-            return;
-        }
-        if (part.startsWith("nameequals:")) {
-            wrapper.setName(resolveAllPlaceholders(p, part.substring(11)));
-            wrapper.setCheckNameEquals(true);
-            return;
-        }
-        if (part.startsWith("lorecontains:")) {
-            wrapper.setLore(resolveAllPlaceholders(p, part.substring(13)));
-            wrapper.setCheckLoreContains(true);
-            return;
-        }
-        if (part.startsWith("loreequals:")) {
-            wrapper.setLore(resolveAllPlaceholders(p, part.substring(11)));
-            wrapper.setCheckLoreEquals(true);
-            return;
-        }
-        if (part.startsWith("matcontains:")) {
-            wrapper.setMaterialString(resolveAllPlaceholders(p, part.substring(12)));
-            wrapper.setCheckMaterialContains(true);
-            return;
-        }
-        if (part.startsWith("enchantments:")) {
-            String body = resolveAllPlaceholders(p, part.substring(13));
-            parseEnchantments(wrapper, p, body);
-            return;
-        }
-        if (part.startsWith("potiontype:")) {
-            String v = resolveAllPlaceholders(p, part.substring(11)).toUpperCase(Locale.ROOT);
-            try {
-                wrapper.setPotionType(PotionType.valueOf(v));
-            } catch (IllegalArgumentException ignored) {}
-            wrapper.setCheckPotionType(true);
-            return;
-        }
-        if (part.startsWith("potionextended:")) {
-            wrapper.setPotionExtended(Boolean.parseBoolean(resolveAllPlaceholders(p, part.substring(15))));
-            wrapper.setCheckPotionExtended(true);
-            return;
-        }
-        if (part.startsWith("potionupgraded:")) {
-            wrapper.setPotionUpgraded(Boolean.parseBoolean(resolveAllPlaceholders(p, part.substring(15))));
-            wrapper.setCheckPotionUpgraded(true);
-            return;
-        }
-        if (part.startsWith("nbtstrings:")) {
-            parseNbtStrings(wrapper, p, resolveAllPlaceholders(p, part.substring(11)));
-            return;
-        }
-        if (part.startsWith("nbtints:")) {
-            parseNbtInts(wrapper, p, resolveAllPlaceholders(p, part.substring(8)));
-            return;
-        }
-        if (part.startsWith("inslot:")) {
-            String v = resolveAllPlaceholders(p, part.substring(7));
-            wrapper.setSlot(getInt(v));
-            return;
-        }
-        if (part.startsWith("inhand")) {
-            if (part.startsWith("inhand:")) {
-                String side = part.substring(7);
-                if (side.equals("main")) wrapper.setCheckMainHand(true);
-                else if (side.equals("off")) wrapper.setCheckOffHand(true);
-            } else {
-                wrapper.setCheckMainHand(true);
-                wrapper.setCheckOffHand(true);
+            case "custommodeldata" -> {
+                int parsed = getInt(value);
+                if (parsed >= 0) {
+                    wrapper.setCustomData(parsed);
+                    wrapper.setCheckCustomData(true);
+                }
             }
-            return;
-        }
-        if (part.equals("strict")) {
-            wrapper.setIsStrict(true);
-            return;
+            case "mat" -> {
+                if (value.indexOf(';') < 0 && value.indexOf('*') < 0) {
+                    wrapper.setType(value);
+                    wrapper.setCheckType(true);
+                } else {
+                    wrapper.restrictMaterials(MaterialSets.parse(value, valueOffset, errors));
+                }
+            }
+            case "mattag" -> wrapper.restrictMaterials(MaterialSets.tag(value, valueOffset, errors));
+            // amtexpr: internal arithmetic expression system
+            // Supports wrapper: {cmi_equationint_<expression>}
+            case "amtexpr" -> {
+                AmountExpression expr = AmountExpression.compile(value, valueOffset, errors);
+                setAmount(wrapper, expr == null ? AmountExpression.INVALID : evaluateAmount(expr, resolver));
+            }
+            case "amt" -> setAmount(wrapper, getInt(value));
+            case "namestartswith" -> {
+                wrapper.setName(value);
+                wrapper.setCheckNameStartsWith(true);
+            }
+            case "namecontains" -> {
+                wrapper.setName(value);
+                wrapper.setCheckNameContains(true);
+            }
+            case "nameequals" -> {
+                wrapper.setName(value);
+                wrapper.setCheckNameEquals(true);
+            }
+            case "lorecontains" -> {
+                wrapper.setLore(value);
+                wrapper.setCheckLoreContains(true);
+            }
+            case "loreequals" -> {
+                wrapper.setLore(value);
+                wrapper.setCheckLoreEquals(true);
+            }
+            case "namecontainsany" -> {
+                wrapper.setNameTerms(compileTerms(value, valueOffset, errors));
+                wrapper.setCheckNameContainsAny(true);
+            }
+            case "lorecontainsany" -> {
+                wrapper.setLoreTerms(compileTerms(value, valueOffset, errors));
+                wrapper.setCheckLoreContainsAny(true);
+            }
+            case "matcontains" -> {
+                wrapper.setMaterialString(value);
+                wrapper.setCheckMaterialContains(true);
+                wrapper.restrictMaterials(MaterialSets.containing(value));
+            }
+            case "enchantments" -> parseEnchantments(wrapper, value, valueOffset, errors);
+            case "potiontype" -> {
+                try {
+                    wrapper.setPotionType(PotionType.valueOf(value.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException ignored) {}
+                wrapper.setCheckPotionType(true);
+            }
+            case "potionextended" -> {
+                wrapper.setPotionExtended(Boolean.parseBoolean(value));
+                wrapper.setCheckPotionExtended(true);
+            }
+            case "potionupgraded" -> {
+                wrapper.setPotionUpgraded(Boolean.parseBoolean(value));
+                wrapper.setCheckPotionUpgraded(true);
+            }
+            case "nbtstrings" -> parseNbtStrings(wrapper, value, valueOffset, errors);
+            case "nbtints" -> parseNbtInts(wrapper, value, valueOffset, errors);
+            case "inslot" -> wrapper.setSlot(getInt(value));
+            case "inhand" -> {
+                if (value.equals("main")) wrapper.setCheckMainHand(true);
+                else if (value.equals("off")) wrapper.setCheckOffHand(true);
+            }
+            default -> {}
         }
-        if (part.equals("enchanted")) {
-            wrapper.setCheckEnchanted(true);
+    }
+
+    /** An empty list compiles to an automaton that matches nothing. */
+    private static TermAutomaton compileTerms(String body, int offset, ModifierLexer.ErrorSink errors) {
+        List<String> terms = ModifierLexer.terms(body);
+        if (terms.isEmpty()) errors.error(offset, "expected at least one term");
+        return TermAutomaton.compile(terms);
+    }
+
+    private static int evaluateAmount(AmountExpression expr, PlaceholderResolver resolver) {
+        String[] values = new String[expr.variables()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = resolver.resolve(expr.variable(i));
         }
+        return expr.evaluate(values);
+    }
+
+    /** A negative amount marks the spec's amount as invalid, which fails checks and removals. */
+    private static void setAmount(ItemWrapper.Builder wrapper, int amount) {
+        wrapper.setAmount(Math.max(0, amount));
+        wrapper.setAmountValid(amount >= 0);
+        wrapper.setCheckAmount(true);
     }
 
-    private void parseEnchantments(ItemWrapper wrapper, Player p, String body) {
-        HashMap<Enchantment, Integer> enchantments = new HashMap<>();
-        String[] enchArray = body.split("(?<!\\\\);");
-        for (String s : enchArray) {
-            if (s.isEmpty()) continue;
-            String[] split = s.split("=");
-            String id = resolveAllPlaceholders(p, split[0]);
-            int level = -1;
-            if (split.length > 1) {
+    private void parseEnchantments(ItemWrapper.Builder wrapper, String body, int offset, ModifierLexer.ErrorSink errors) {
+        EnchantmentIndex index = EnchantmentIndex.get();
+        EnchantmentSet.Builder enchantments = EnchantmentSet.builder(index);
+        for (ModifierLexer.Entry e : ModifierLexer.entries(body, offset, errors)) {
+            int level = EnchantmentSet.ANY_LEVEL;
+            if (e.value() != null) {
                 try {
-                    level = Integer.parseInt(resolveAllPlaceholders(p, split[1]));
-                } catch (NumberFormatException ignored) {}
+                    level = Integer.parseInt(e.value());
+                } catch (NumberFormatException ignored) {
+                    errors.error(e.position(), "invalid enchantment level '" + e.value() + "'");
+                }
             }
-            Enchantment ench = resolveEnchantment(id);
-            if (ench != null) enchantments.put(ench, level);
+            Enchantment ench = index.resolve(e.key());
+            if (ench != null) enchantments.add(ench, level);
+            else errors.error(e.position(), "unknown enchantment '" + e.key() + "'");
         }
-        wrapper.setEnchantments(enchantments);
+        wrapper.setEnchantments(enchantments.build());
         wrapper.setCheckEnchantments(true);
     }
 
-    private Enchantment resolveEnchantment(String token) {
-        NamespacedKey key = NamespacedKey.minecraft(token.toLowerCase(Locale.ROOT));
-        Enchantment ench = Enchantment.getByKey(key);
-        if (ench != null) return ench;
-        return Enchantment.getByName(token.toUpperCase(Locale.ROOT));
-    }
-
-    private void parseNbtStrings(ItemWrapper wrapper, Player p, String body) {
-        HashMap<String, String> map = new HashMap<>();
-        String[] arr = body.split("(?<!\\\\);");
-        for (String s : arr) {
-            if (s.isEmpty()) continue;
-            String[] kv = s.split("=");
-            if (kv.length > 1) {
-                String k = resolveAllPlaceholders(p, kv[0]);
-                String v = resolveAllPlaceholders(p, kv[1]);
-                map.put(k, v);
-            }
+    private void parseNbtStrings(ItemWrapper.Builder wrapper, String body, int offset, ModifierLexer.ErrorSink errors) {
+        List<NbtCriterion> criteria = new ArrayList<>();
+        for (ModifierLexer.Entry e : ModifierLexer.entries(body, offset, errors)) {
+            if (e.value() != null) criteria.add(NbtCriterion.ofString(e.key(), e.value()));
+            else errors.error(e.position(), "expected '=' after NBT key '" + e.key() + "'");
         }
-        wrapper.setNbtStrings(map);
+        wrapper.setNbtStrings(criteria);
         wrapper.setCheckNbtStrings(true);
     }
 
-    private void parseNbtInts(ItemWrapper wrapper, Player p, String body) {
-        HashMap<String, Integer> map = new HashMap<>();
-        String[] arr = body.split("(?<!\\\\);");
-        for (String s : arr) {
-            if (s.isEmpty()) continue;
-            String[] kv = s.split("=");
-            if (kv.length > 1) {
-                String k = resolveAllPlaceholders(p, kv[0]);
-                String v = resolveAllPlaceholders(p, kv[1]);
-                try {
-                    map.put(k, Integer.parseInt(v));
-                } catch (NumberFormatException ignored) {}
+    private void parseNbtInts(ItemWrapper.Builder wrapper, String body, int offset, ModifierLexer.ErrorSink errors) {
+        List<NbtCriterion> criteria = new ArrayList<>();
+        for (ModifierLexer.Entry e : ModifierLexer.entries(body, offset, errors)) {
+            if (e.value() == null) {
+                errors.error(e.position(), "expected '=' after NBT key '" + e.key() + "'");
+                continue;
+            }
+            try {
+                criteria.add(NbtCriterion.ofInt(e.key(), Integer.parseInt(e.value())));
+            } catch (NumberFormatException ignored) {
+                errors.error(e.position(), "invalid integer '" + e.value() + "'");
             }
         }
-        wrapper.setNbtInts(map);
+        wrapper.setNbtInts(criteria);
         wrapper.setCheckNbtInts(true);
     }
 
@@ -1107,130 +1693,58 @@ public class CheckItemExpansion extends PlaceholderExpansion implements Configur
         defaults.put("remove_enabled", false);
         defaults.put("cache_enabled", true);
         defaults.put("cache_max_size", 500);
+        defaults.put("give_cache_max_size", 200);
+        defaults.put("multi_result_separator", ",");
+        defaults.put("server_cache_interval_millis", 5000);
+        defaults.put("server_parallelism", 0);
+        defaults.put("server_loading_text", "loading");
+        defaults.put("metrics_enabled", true);
+        defaults.put("metrics_dump_interval_seconds", 0);
+        defaults.put("metrics_dump_file", "checkitem-metrics.properties");
+        defaults.put("result_cache_enabled", true);
+        defaults.put("result_cache_max_size", 2000);
+        defaults.put("result_cache_ttl_millis", 1000);
+        defaults.put("index_enabled", false);
+        defaults.put("index_max_age_millis", 1000);
+        defaults.put("stack_cache_enabled", true);
+        defaults.put("stack_cache_max_age_millis", 1000);
+        defaults.put("snapshot_enabled", false);
+        defaults.put("snapshot_interval_ticks", 1);
+        defaults.put("snapshot_max_age_millis", 1000);
         return defaults;
     }
 
-    private boolean checkNbtEntryString(String key, String value, ReadableNBT nbt) {
-        String[] nested = key.split("\\.\\.");
-        if (nested.length > 1) {
-            ReadableNBT sub = nbt.getCompound(nested[0]);
-            if (sub == null) return false;
-            return checkNbtEntryString(String.join("..", Arrays.copyOfRange(nested, 1, nested.length)), value, sub);
-        }
-        if (!nbt.hasTag(key)) return false;
-        return Objects.equals(nbt.getString(key), value);
-    }
-
-    private boolean checkNbtEntryInt(String key, int value, ReadableNBT nbt) {
-        String[] nested = key.split("\\.\\.");
-        if (nested.length > 1) {
-            ReadableNBT sub = nbt.getCompound(nested[0]);
-            if (sub == null) return false;
-            return checkNbtEntryInt(String.join("..", Arrays.copyOfRange(nested, 1, nested.length)), value, sub);
-        }
-        if (!nbt.hasTag(key)) return false;
-        return nbt.getInteger(key) == value;
-    }
-
-    private ItemStack[] resolveItemsToCheck(Player p, ItemWrapper wrapper) {
+    /**
+     * Slots the spec looks at, or null for the whole inventory in getContents() order.
+     * {@code live} reads the live inventory even in snapshot mode (see {@link #snapshotFor}).
+     */
+    private int[] slotsToCheck(Player p, ItemWrapper wrapper, boolean live) {
         if (wrapper.shouldCheckMainHand() || wrapper.shouldCheckOffHand()) {
             if (wrapper.shouldCheckMainHand() && wrapper.shouldCheckOffHand()) {
-                return new ItemStack[]{
-                        p.getInventory().getItem(p.getInventory().getHeldItemSlot()),
-                        p.getInventory().getItem(40)
-                };
+                return new int[]{heldSlotOf(p, live), OFF_HAND_SLOT};
             } else if (wrapper.shouldCheckMainHand()) {
-                return new ItemStack[]{p.getInventory().getItem(p.getInventory().getHeldItemSlot())};
+                return new int[]{heldSlotOf(p, live)};
             } else {
-                return new ItemStack[]{p.getInventory().getItem(40)};
+                return new int[]{OFF_HAND_SLOT};
             }
         }
         if (wrapper.getSlot() != -1) {
-            return new ItemStack[]{p.getInventory().getItem(wrapper.getSlot())};
+            return new int[]{wrapper.getSlot()};
         }
-        return p.getInventory().getContents();
-    }
-
-    // ================= Arithmetic Expression Parser =================
-
-    private int evalExpression(String expr) {
-        if (expr == null) return -1;
-        expr = expr.replaceAll("\\s+", "");
-        if (expr.isEmpty()) return -1;
-        try {
-            double val = parseExpr(new TokenStream(expr));
-            if (Double.isNaN(val) || Double.isInfinite(val)) return -1;
-            if (val < 0) val = 0;
-            return (int) Math.floor(val);
-        } catch (Exception e) {
-            return -1;
-        }
-    }
-
-    private double parseExpr(TokenStream ts) {
-        double value = parseTerm(ts);
-        while (ts.hasNext()) {
-            char c = ts.peek();
-            if (c == '+' || c == '-') {
-                ts.next();
-                double rhs = parseTerm(ts);
-                value = (c == '+') ? value + rhs : value - rhs;
-            } else break;
-        }
-        return value;
-    }
-
-    private double parseTerm(TokenStream ts) {
-        double value = parseFactor(ts);
-        while (ts.hasNext()) {
-            char c = ts.peek();
-            if (c == '*' || c == '/') {
-                ts.next();
-                double rhs = parseFactor(ts);
-                if (c == '*') value *= rhs;
-                else value /= rhs;
-            } else break;
-        }
-        return value;
-    }
-
-    private double parseFactor(TokenStream ts) {
-        if (!ts.hasNext()) throw new IllegalArgumentException("Unexpected end");
-        char c = ts.peek();
-        if (c == '(') {
-            ts.next();
-            double v = parseExpr(ts);
-            if (!ts.hasNext() || ts.next() != ')') throw new IllegalArgumentException("Missing ')'");
-            return v;
-        } else if (c == '+' || c == '-') {
-            ts.next();
-            double v = parseFactor(ts);
-            return (c == '-') ? -v : v;
-        } else if (Character.isDigit(c)) {
-            return parseNumber(ts);
-        } else {
-            throw new IllegalArgumentException("Unexpected char: " + c);
+        MaterialIndexes indexes = materialIndexes;
+        if (indexes != null && snapshotFor(p, live) == null) {
+            Material mat = matcherFor(wrapper).indexedMaterial();
+            if (mat != null) return indexes.get(p).slots(mat);
         }
+        return null;
     }
 
-    private double parseNumber(TokenStream ts) {
-        StringBuilder sb = new StringBuilder();
-        while (ts.hasNext()) {
-            char c = ts.peek();
-            if (Character.isDigit(c) || c == '.') {
-                sb.append(c);
-                ts.next();
-            } else break;
+    private ItemStack[] stacksAt(Player p, int[] slots, boolean live) {
+        if (slots == null) return contentsOf(p, live);
+        ItemStack[] out = new ItemStack[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            out[i] = itemAt(p, slots[i], live);
         }
-        return Double.parseDouble(sb.toString());
-    }
-
-    private static class TokenStream {
-        private final String s;
-        private int i = 0;
-        TokenStream(String s) { this.s = s; }
-        boolean hasNext() { return i < s.length(); }
-        char next() { return s.charAt(i++); }
-        char peek() { return s.charAt(i); }
+        return out;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,91 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable per-stack matcher compiled once from a parsed {@link CheckItemExpansion.ItemWrapper}.
+ * Only the enabled predicates are kept, ordered cheapest-first:
+ * material identity and material-set bit test, then meta, then NBT.
+ */
+final class CompiledMatcher {
+
+    @FunctionalInterface
+    interface StackPredicate {
+        boolean test(StackView view);
+    }
+
+    private final Material material;
+    private final boolean checkMaterial;
+    /** Allowed material ordinals as a bitset, or null when no material set applies. */
+    private final long[] materialBits;
+    private final StackPredicate[] metaChecks;
+    private final StackPredicate[] nbtChecks;
+
+    private CompiledMatcher(Builder b) {
+        this.material = b.material;
+        this.checkMaterial = b.checkMaterial;
+        this.materialBits = b.materialBits;
+        this.metaChecks = b.metaChecks.toArray(new StackPredicate[0]);
+        this.nbtChecks = b.nbtChecks.toArray(new StackPredicate[0]);
+    }
+
+    static Builder builder() { return new Builder(); }
+
+    /** True when the spec targets air, i.e. an empty slot counts as a match. */
+    boolean matchesAir() { return checkMaterial && material == Material.AIR; }
+
+    /** The single concrete material this spec requires, or null if any material can match. */
+    Material indexedMaterial() {
+        return checkMaterial && material != null && material != Material.AIR ? material : null;
+    }
+
+    /** Meta is only materialised by the view once a meta predicate is reached. */
+    boolean matches(StackView view) {
+        Material type = view.stack().getType();
+        if (checkMaterial && type != material) return false;
+        if (materialBits != null) {
+            int ordinal = type.ordinal();
+            if ((materialBits[ordinal >>> 6] & (1L << ordinal)) == 0) return false;
+        }
+        for (StackPredicate check : metaChecks) {
+            if (!check.test(view)) return false;
+        }
+        for (StackPredicate check : nbtChecks) {
+            if (!check.test(view)) return false;
+        }
+        return true;
+    }
+
+    static final class Builder {
+        private Material material;
+        private boolean checkMaterial;
+        private long[] materialBits;
+        private final List<StackPredicate> metaChecks = new ArrayList<>();
+        private final List<StackPredicate> nbtChecks = new ArrayList<>();
+
+        private Builder() {}
+
+        /** Unknown material names compile to a matcher that rejects every stack. */
+        Builder material(String name) {
+            this.checkMaterial = true;
+            this.material = name == null ? null : Material.getMaterial(name);
+            return this;
+        }
+
+        Builder materials(Set<Material> allowed) {
+            long[] bits = new long[(Material.values().length + 63) >>> 6];
+            for (Material mat : allowed) bits[mat.ordinal() >>> 6] |= 1L << mat.ordinal();
+            this.materialBits = bits;
+            return this;
+        }
+
+        Builder meta(StackPredicate check) { metaChecks.add(check); return this; }
+        Builder nbt(StackPredicate check) { nbtChecks.add(check); return this; }
+
+        CompiledMatcher build() { return new CompiledMatcher(this); }
+    }
+}
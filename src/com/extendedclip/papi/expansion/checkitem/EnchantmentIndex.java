@@ -0,0 +1,94 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.Registry;
+import org.bukkit.enchantments.Enchantment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dense ids for the server's enchantments, built once from the registry (enchantments cannot be
+ * added after startup). Specs resolve their names here and keep only ids and levels
+ * ({@link EnchantmentSet}); a stack's enchantments are turned into {@link Levels} once per stack.
+ */
+final class EnchantmentIndex {
+
+    /** A stack's enchantments by id: a presence bitset and the level of each present id. */
+    record Levels(long[] bits, int[] levels) {}
+
+    private static volatile EnchantmentIndex instance;
+
+    private final Enchantment[] byId;
+    private final Map<Enchantment, Integer> ids = new HashMap<>();
+    private final Map<String, Enchantment> byName = new HashMap<>();
+    private final Levels none;
+
+    @SuppressWarnings("deprecation")
+    private EnchantmentIndex(List<Enchantment> enchantments) {
+        this.byId = enchantments.toArray(new Enchantment[0]);
+        for (int id = 0; id < byId.length; id++) {
+            Enchantment ench = byId[id];
+            ids.put(ench, id);
+            String key = ench.getKey().getKey().toLowerCase(Locale.ROOT);
+            byName.putIfAbsent(key, ench);
+            byName.putIfAbsent(ench.getKey().getNamespace() + ":" + key, ench);
+            try {
+                byName.putIfAbsent(ench.getName().toUpperCase(Locale.ROOT), ench);
+            } catch (RuntimeException ignored) {}
+        }
+        this.none = new Levels(new long[words()], new int[byId.length]);
+    }
+
+    /**
+     * The index, built on first call. A server without an enchantment registry gets an empty
+     * index, in which no enchantment name resolves.
+     */
+    static EnchantmentIndex get() {
+        EnchantmentIndex index = instance;
+        if (index != null) return index;
+        synchronized (EnchantmentIndex.class) {
+            if (instance == null) {
+                List<Enchantment> enchantments = new ArrayList<>();
+                try {
+                    for (Enchantment ench : Registry.ENCHANTMENT) enchantments.add(ench);
+                } catch (RuntimeException | LinkageError ignored) {
+                    enchantments.clear();
+                }
+                instance = new EnchantmentIndex(enchantments);
+            }
+            return instance;
+        }
+    }
+
+    /** {@code sharpness}, {@code minecraft:sharpness} or the legacy {@code DAMAGE_ALL}; null when unknown. */
+    Enchantment resolve(String token) {
+        Enchantment ench = byName.get(token.toLowerCase(Locale.ROOT));
+        return ench != null ? ench : byName.get(token.toUpperCase(Locale.ROOT));
+    }
+
+    /** Dense id, or -1 for an enchantment the registry did not list. */
+    int id(Enchantment ench) {
+        Integer id = ids.get(ench);
+        return id == null ? -1 : id;
+    }
+
+    Enchantment enchantment(int id) { return byId[id]; }
+
+    int words() { return (byId.length + 63) >>> 6; }
+
+    Levels levels(Map<Enchantment, Integer> enchants) {
+        if (enchants.isEmpty()) return none;
+        long[] bits = new long[words()];
+        int[] levels = new int[byId.length];
+        for (Map.Entry<Enchantment, Integer> e : enchants.entrySet()) {
+            int id = id(e.getKey());
+            if (id < 0) continue;
+            bits[id >>> 6] |= 1L << id;
+            levels[id] = e.getValue();
+        }
+        return new Levels(bits, levels);
+    }
+}
@@ -0,0 +1,85 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.enchantments.Enchantment;
+
+import java.util.Arrays;
+
+/**
+ * The enchantments an {@code enchantments:} spec requires, as ids of {@link EnchantmentIndex}:
+ * a bitset of required ids plus, in spec order, each id and its level ({@link #ANY_LEVEL} for a
+ * bare name). Matching is one mask test per 64 enchantments, then a level compare for the
+ * entries that name one. Immutable once built.
+ */
+final class EnchantmentSet {
+
+    static final int ANY_LEVEL = -1;
+
+    private final EnchantmentIndex index;
+    private final long[] required;
+    private final int[] ids;
+    private final int[] levels;
+
+    private EnchantmentSet(EnchantmentIndex index, long[] required, int[] ids, int[] levels) {
+        this.index = index;
+        this.required = required;
+        this.ids = ids;
+        this.levels = levels;
+    }
+
+    int size() { return ids.length; }
+
+    Enchantment enchantment(int i) { return index.enchantment(ids[i]); }
+
+    int level(int i) { return levels[i]; }
+
+    boolean matches(EnchantmentIndex.Levels present) {
+        long[] bits = present.bits();
+        for (int w = 0; w < required.length; w++) {
+            if ((bits[w] & required[w]) != required[w]) return false;
+        }
+        int[] presentLevels = present.levels();
+        for (int i = 0; i < ids.length; i++) {
+            if (levels[i] != ANY_LEVEL && presentLevels[ids[i]] != levels[i]) return false;
+        }
+        return true;
+    }
+
+    static Builder builder(EnchantmentIndex index) { return new Builder(index); }
+
+    static final class Builder {
+        private final EnchantmentIndex index;
+        private final long[] required;
+        private int[] ids = new int[4];
+        private int[] levels = new int[4];
+        private int size;
+
+        private Builder(EnchantmentIndex index) {
+            this.index = index;
+            this.required = new long[index.words()];
+        }
+
+        /** A repeated enchantment keeps the last level given, as the map it replaces did. */
+        Builder add(Enchantment ench, int level) {
+            int id = index.id(ench);
+            if (id < 0) return this;
+            if ((required[id >>> 6] & (1L << id)) != 0) {
+                for (int i = 0; i < size; i++) {
+                    if (ids[i] == id) levels[i] = level;
+                }
+                return this;
+            }
+            required[id >>> 6] |= 1L << id;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+            }
+            ids[size] = id;
+            levels[size++] = level;
+            return this;
+        }
+
+        EnchantmentSet build() {
+            return new EnchantmentSet(index, required.clone(), Arrays.copyOf(ids, size), Arrays.copyOf(levels, size));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+/**
+ * Working copy of one inventory snapshot. Removals and additions are planned against the copy
+ * (slots are cloned on first write), and {@link #commit(PlayerInventory)} writes back only the
+ * slots that changed. Nothing reaches the live inventory unless commit is called.
+ */
+final class InventoryTransaction {
+
+    static final int STORAGE_SIZE = 36;
+    static final int ARMOR_FIRST_SLOT = 36;
+
+    private final ItemStack[] work;
+    private final boolean[] touched;
+
+    InventoryTransaction(ItemStack[] contents) {
+        this.work = contents.clone();
+        this.touched = new boolean[contents.length];
+    }
+
+    /**
+     * Removes {@code amount} matching items from {@code slots} (null = every slot), or every
+     * match when {@code amount} is negative. Armor and off-hand are drained before storage,
+     * like a single remove_. Returns false, leaving the copy unchanged, when fewer than
+     * {@code amount} (or no) items match.
+     */
+    boolean remove(CompiledMatcher matcher, int[] slots, int amount) {
+        if (matcher.matchesAir()) return false;
+        int n = slots == null ? work.length : slots.length;
+        int[] plan = new int[n];
+        int planSize = 0;
+        int total = 0;
+        StackView view = new StackView();
+        for (int i = 0; i < n; i++) {
+            int slot = slots == null ? i : slots[i];
+            ItemStack stack = slot < work.length ? work[slot] : null;
+            if (stack == null || stack.getType() == Material.AIR) continue;
+            if (!matcher.matches(view.reset(stack))) continue;
+            plan[planSize++] = slot;
+            total += stack.getAmount();
+        }
+        if (total == 0 || (amount >= 0 && total < amount)) return false;
+
+        int toRemove = amount >= 0 ? amount : total;
+        for (int pass = 0; pass < 2 && toRemove > 0; pass++) {
+            boolean equipment = pass == 0;
+            for (int i = 0; i < planSize && toRemove > 0; i++) {
+                int slot = plan[i];
+                if ((slot >= ARMOR_FIRST_SLOT) != equipment) continue;
+                ItemStack stack = writable(slot);
+                int taken = Math.min(stack.getAmount(), toRemove);
+                toRemove -= taken;
+                if (taken == stack.getAmount()) work[slot] = null;
+                else stack.setAmount(stack.getAmount() - taken);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places {@code amount} copies of {@code prototype} into storage the way addItem does:
+     * topping up similar stacks first, then filling empty slots. Returns how many did not fit.
+     */
+    int add(ItemStack prototype, int amount) {
+        int maxStack = Math.max(1, prototype.getMaxStackSize());
+        int remaining = amount;
+        for (int slot = 0; slot < STORAGE_SIZE && remaining > 0; slot++) {
+            ItemStack stack = work[slot];
+            if (stack == null || stack.getAmount() >= maxStack || !stack.isSimilar(prototype)) continue;
+            int moved = Math.min(remaining, maxStack - stack.getAmount());
+            writable(slot).setAmount(stack.getAmount() + moved);
+            remaining -= moved;
+        }
+        for (int slot = 0; slot < STORAGE_SIZE && remaining > 0; slot++) {
+            ItemStack stack = work[slot];
+            if (stack != null && stack.getType() != Material.AIR) continue;
+            int placed = Math.min(remaining, maxStack);
+            ItemStack fresh = prototype.clone();
+            fresh.setAmount(placed);
+            work[slot] = fresh;
+            touched[slot] = true;
+            remaining -= placed;
+        }
+        return remaining;
+    }
+
+    /** Writes every changed slot back; returns false when nothing changed. */
+    boolean commit(PlayerInventory inv) {
+        boolean changed = false;
+        for (int slot = 0; slot < work.length; slot++) {
+            if (!touched[slot]) continue;
+            inv.setItem(slot, work[slot]);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private ItemStack writable(int slot) {
+        if (!touched[slot]) {
+            work[slot] = work[slot].clone();
+            touched[slot] = true;
+        }
+        return work[slot];
+    }
+}
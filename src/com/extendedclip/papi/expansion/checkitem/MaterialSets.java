@@ -0,0 +1,84 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Tag;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * Parse-time expansion of material modifiers into sets: {@code mat:} lists and globs,
+ * {@code mattag:} and {@code matcontains:}. Matching then only tests the stack's material
+ * against the set ({@link CompiledMatcher}); no names are compared per stack.
+ */
+final class MaterialSets {
+
+    private MaterialSets() {}
+
+    /** {@code STONE;*_LOG;DIAMOND_*}: exact names and {@code *} globs, case-insensitive. */
+    @SuppressWarnings("deprecation")
+    static EnumSet<Material> parse(String body, int offset, ModifierLexer.ErrorSink errors) {
+        EnumSet<Material> set = EnumSet.noneOf(Material.class);
+        for (String term : ModifierLexer.terms(body)) {
+            String pattern = term.trim().toUpperCase(Locale.ROOT);
+            if (pattern.indexOf('*') < 0) {
+                Material mat = Material.getMaterial(pattern);
+                if (mat != null) set.add(mat);
+                else errors.error(offset, "unknown material '" + term + "'");
+                continue;
+            }
+            int before = set.size();
+            for (Material mat : Material.values()) {
+                if (!mat.isLegacy() && glob(pattern, mat.name())) set.add(mat);
+            }
+            if (set.size() == before) errors.error(offset, "no material matches '" + term + "'");
+        }
+        return set;
+    }
+
+    /** Items of a Bukkit tag ({@code logs}, {@code minecraft:logs}), falling back to block tags. */
+    static EnumSet<Material> tag(String name, int offset, ModifierLexer.ErrorSink errors) {
+        EnumSet<Material> set = EnumSet.noneOf(Material.class);
+        String lower = name.trim().toLowerCase(Locale.ROOT);
+        NamespacedKey key = lower.indexOf(':') >= 0 ? NamespacedKey.fromString(lower) : NamespacedKey.minecraft(lower);
+        Tag<Material> tag = key == null ? null : Bukkit.getTag(Tag.REGISTRY_ITEMS, key, Material.class);
+        if (tag == null && key != null) tag = Bukkit.getTag(Tag.REGISTRY_BLOCKS, key, Material.class);
+        if (tag != null) set.addAll(tag.getValues());
+        else errors.error(offset, "unknown material tag '" + name + "'");
+        return set;
+    }
+
+    /** Every material whose name contains {@code needle}, as matcontains has always compared. */
+    @SuppressWarnings("deprecation")
+    static EnumSet<Material> containing(String needle) {
+        EnumSet<Material> set = EnumSet.noneOf(Material.class);
+        for (Material mat : Material.values()) {
+            if (!mat.isLegacy() && mat.name().contains(needle)) set.add(mat);
+        }
+        return set;
+    }
+
+    /** {@code *} matches any run of characters; everything else is literal. */
+    static boolean glob(String pattern, String name) {
+        int star = pattern.indexOf('*');
+        if (star < 0) return pattern.equals(name);
+        String head = pattern.substring(0, star);
+        if (!name.startsWith(head)) return false;
+        int pos = head.length();
+        int from = star + 1;
+        while (true) {
+            int next = pattern.indexOf('*', from);
+            if (next < 0) {
+                String tail = pattern.substring(from);
+                return name.length() - pos >= tail.length() && name.endsWith(tail);
+            }
+            String part = pattern.substring(from, next);
+            int found = name.indexOf(part, pos);
+            if (found < 0) return false;
+            pos = found + part.length();
+            from = next + 1;
+        }
+    }
+}
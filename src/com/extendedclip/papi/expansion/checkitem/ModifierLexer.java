@@ -0,0 +1,152 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass, regex-free lexer for the modifier grammar:
+ * {@code key:value,key:value} where {@code __} is a space and {@code \,} a literal comma;
+ * list values are {@code k=v;k=v} with {@code \;} as a literal semicolon; NBT keys use
+ * {@code ..} between compound names.
+ */
+final class ModifierLexer {
+
+    /** Receives syntax problems with their character offset in the original spec. */
+    @FunctionalInterface
+    interface ErrorSink {
+        ErrorSink IGNORE = (position, message) -> {};
+
+        void error(int position, String message);
+    }
+
+    /** One modifier; {@code value} is null for bare flags such as {@code strict}. */
+    record Part(String key, String value, int position, int valueOffset) {}
+
+    /** One list entry; {@code value} is null when the entry has no {@code =}. */
+    record Entry(String key, String value, int position) {}
+
+    private ModifierLexer() {}
+
+    static List<Part> parts(String spec, ErrorSink errors) {
+        List<Part> parts = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        int start = 0;
+        int colon = -1;
+        int colonAt = -1;
+        int n = spec.length();
+        for (int i = 0; i < n; i++) {
+            char c = spec.charAt(i);
+            if (c == '\\' && i + 1 < n && spec.charAt(i + 1) == ',') {
+                cur.append(',');
+                i++;
+            } else if (c == '_' && i + 1 < n && spec.charAt(i + 1) == '_') {
+                cur.append(' ');
+                i++;
+            } else if (c == ',') {
+                addPart(parts, cur, start, colon, colonAt, errors);
+                cur.setLength(0);
+                start = i + 1;
+                colon = -1;
+            } else {
+                if (c == ':' && colon < 0) {
+                    colon = cur.length();
+                    colonAt = i;
+                }
+                cur.append(c);
+            }
+        }
+        addPart(parts, cur, start, colon, colonAt, errors);
+        return parts;
+    }
+
+    private static void addPart(List<Part> parts, StringBuilder cur, int start, int colon, int colonAt, ErrorSink errors) {
+        if (cur.length() == 0) return;
+        if (colon == 0) {
+            errors.error(start, "missing modifier name before ':'");
+            return;
+        }
+        if (colon < 0) {
+            parts.add(new Part(cur.toString(), null, start, -1));
+        } else {
+            parts.add(new Part(cur.substring(0, colon), cur.substring(colon + 1), start, colonAt + 1));
+        }
+    }
+
+    /**
+     * Splits a list value on unescaped {@code ;} and each entry on its first {@code =}.
+     * {@code offset} is the position of {@code body} in the spec, used for error positions.
+     */
+    static List<Entry> entries(String body, int offset, ErrorSink errors) {
+        List<Entry> entries = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        int start = 0;
+        int eq = -1;
+        int n = body.length();
+        for (int i = 0; i < n; i++) {
+            char c = body.charAt(i);
+            if (c == '\\' && i + 1 < n && body.charAt(i + 1) == ';') {
+                cur.append(';');
+                i++;
+            } else if (c == ';') {
+                addEntry(entries, cur, eq, offset + start, errors);
+                cur.setLength(0);
+                start = i + 1;
+                eq = -1;
+            } else {
+                if (c == '=' && eq < 0) eq = cur.length();
+                cur.append(c);
+            }
+        }
+        addEntry(entries, cur, eq, offset + start, errors);
+        return entries;
+    }
+
+    private static void addEntry(List<Entry> entries, StringBuilder cur, int eq, int position, ErrorSink errors) {
+        if (cur.length() == 0) return;
+        if (eq == 0) {
+            errors.error(position, "missing key before '='");
+            return;
+        }
+        if (eq < 0) {
+            entries.add(new Entry(cur.toString(), null, position));
+        } else {
+            entries.add(new Entry(cur.substring(0, eq), cur.substring(eq + 1), position));
+        }
+    }
+
+    /** Splits a term list on unescaped {@code ;}; empty terms are dropped. */
+    static List<String> terms(String body) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        int n = body.length();
+        for (int i = 0; i < n; i++) {
+            char c = body.charAt(i);
+            if (c == '\\' && i + 1 < n && body.charAt(i + 1) == ';') {
+                cur.append(';');
+                i++;
+            } else if (c == ';') {
+                if (cur.length() > 0) terms.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        if (cur.length() > 0) terms.add(cur.toString());
+        return terms;
+    }
+
+    /** Splits an NBT key on {@code ..} into its compound path segments. */
+    static String[] path(String key) {
+        int idx = key.indexOf("..");
+        if (idx < 0) return new String[]{key};
+        List<String> segments = new ArrayList<>();
+        int from = 0;
+        while (idx >= 0) {
+            segments.add(key.substring(from, idx));
+            from = idx + 2;
+            idx = key.indexOf("..", from);
+        }
+        segments.add(key.substring(from));
+        return segments.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import de.tr7zw.changeme.nbtapi.iface.ReadWriteNBT;
+import de.tr7zw.changeme.nbtapi.iface.ReadableNBT;
+
+import java.util.Arrays;
+
+/**
+ * One {@code nbtstrings:}/{@code nbtints:} entry compiled at parse time: the {@code ..} key is
+ * split into compound segments once, and the expected value is kept in its typed form.
+ */
+final class NbtCriterion {
+
+    private final String[] parents;
+    private final String leaf;
+    private final boolean integer;
+    private final String stringValue;
+    private final int intValue;
+
+    private NbtCriterion(String key, boolean integer, String stringValue, int intValue) {
+        String[] path = ModifierLexer.path(key);
+        this.parents = Arrays.copyOf(path, path.length - 1);
+        this.leaf = path[path.length - 1];
+        this.integer = integer;
+        this.stringValue = stringValue;
+        this.intValue = intValue;
+    }
+
+    static NbtCriterion ofString(String key, String value) {
+        return new NbtCriterion(key, false, value, 0);
+    }
+
+    static NbtCriterion ofInt(String key, int value) {
+        return new NbtCriterion(key, true, null, value);
+    }
+
+    /** Walks the compound path iteratively; a missing compound or tag never matches. */
+    boolean matches(ReadableNBT root) {
+        ReadableNBT nbt = parent(root);
+        if (nbt == null || !nbt.hasTag(leaf)) return false;
+        if (integer) {
+            Integer v = nbt.getInteger(leaf);
+            return v != null && v == intValue;
+        }
+        return stringValue.equals(nbt.getString(leaf));
+    }
+
+    /** Current value at this path, as getinfo prints it. */
+    String read(ReadableNBT root) {
+        ReadableNBT nbt = parent(root);
+        if (nbt == null) return "";
+        return integer ? String.valueOf(nbt.getInteger(leaf)) : String.valueOf(nbt.getString(leaf));
+    }
+
+    /** Writes the expected value, creating intermediate compounds at any depth. */
+    void apply(ReadWriteNBT root) {
+        ReadWriteNBT nbt = root;
+        for (String segment : parents) {
+            nbt = nbt.getOrCreateCompound(segment);
+        }
+        if (integer) nbt.setInteger(leaf, intValue);
+        else nbt.setString(leaf, stringValue);
+    }
+
+    private ReadableNBT parent(ReadableNBT root) {
+        ReadableNBT nbt = root;
+        for (String segment : parents) {
+            nbt = nbt.getCompound(segment);
+            if (nbt == null) return null;
+        }
+        return nbt;
+    }
+}
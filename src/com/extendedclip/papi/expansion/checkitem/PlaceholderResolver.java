@@ -0,0 +1,87 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-pass resolver for {@code {bracket}} and {@code %percent%} placeholders, scoped to one request.
+ * Input without any delimiter is returned untouched. Nested tokens are resolved innermost-first,
+ * and each distinct token is sent to PlaceholderAPI once per request, however many modifiers use it.
+ */
+final class PlaceholderResolver {
+
+    private final Player player;
+    private Map<String, String> resolved;
+
+    PlaceholderResolver(Player player) {
+        this.player = player;
+    }
+
+    static boolean hasPlaceholders(String input) {
+        return input.indexOf('{') >= 0 || input.indexOf('%') >= 0;
+    }
+
+    String resolve(String input) {
+        if (input == null || input.isEmpty() || !hasPlaceholders(input)) return input;
+        StringBuilder out = new StringBuilder(input.length() + 16);
+        append(input, 0, input.length(), out);
+        return out.toString();
+    }
+
+    private void append(String s, int from, int to, StringBuilder out) {
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '{') {
+                int close = matchingBrace(s, i, to);
+                if (close < 0) {
+                    out.append(s, i, to);
+                    return;
+                }
+                StringBuilder inner = new StringBuilder(close - i + 1).append('{');
+                append(s, i + 1, close, inner);
+                inner.append('}');
+                out.append(lookup(inner.toString(), true));
+                i = close + 1;
+            } else if (c == '%') {
+                int close = s.indexOf('%', i + 1);
+                if (close < 0 || close >= to || close == i + 1) {
+                    out.append(c);
+                    i++;
+                    continue;
+                }
+                out.append(lookup(s.substring(i, close + 1), false));
+                i = close + 1;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+    }
+
+    private static int matchingBrace(String s, int open, int to) {
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '{') depth++;
+            else if (c == '}' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    private String lookup(String token, boolean bracket) {
+        if (resolved == null) resolved = new HashMap<>();
+        String value = resolved.get(token);
+        if (value == null) {
+            value = bracket
+                    ? PlaceholderAPI.setBracketPlaceholders(player, token)
+                    : PlaceholderAPI.setPlaceholders(player, token);
+            if (value == null) value = token;
+            resolved.put(token, value);
+        }
+        return value;
+    }
+}
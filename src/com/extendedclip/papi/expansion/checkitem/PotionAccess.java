@@ -0,0 +1,116 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.inventory.meta.PotionMeta;
+import org.bukkit.potion.PotionType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Locale;
+
+/**
+ * Potion base-data access, chosen once at class load:
+ * the {@code getBasePotionType} API on 1.20.5+, where extended/upgraded are encoded as
+ * {@code LONG_}/{@code STRONG_} types, or cached method handles on the legacy {@code PotionData}.
+ */
+abstract class PotionAccess {
+
+    /** Base potion type name with the extended/upgraded flags split out. */
+    record PotionInfo(String type, boolean extended, boolean upgraded) {}
+
+    static final PotionAccess INSTANCE = detect();
+
+    /** Returns null when the meta carries no base potion data. */
+    abstract PotionInfo read(PotionMeta meta);
+
+    abstract void write(PotionMeta meta, PotionType type, boolean extended, boolean upgraded);
+
+    private static PotionAccess detect() {
+        try {
+            PotionMeta.class.getMethod("getBasePotionType");
+            return new Modern();
+        } catch (NoSuchMethodException e) {
+            try {
+                return new Legacy();
+            } catch (ReflectiveOperationException ex) {
+                return new Unsupported();
+            }
+        }
+    }
+
+    private static final class Modern extends PotionAccess {
+        private static final String LONG = "LONG_";
+        private static final String STRONG = "STRONG_";
+
+        @Override
+        PotionInfo read(PotionMeta meta) {
+            PotionType type = meta.getBasePotionType();
+            if (type == null) return null;
+            String name = type.name();
+            if (name.startsWith(LONG)) return new PotionInfo(name.substring(LONG.length()), true, false);
+            if (name.startsWith(STRONG)) return new PotionInfo(name.substring(STRONG.length()), false, true);
+            return new PotionInfo(name, false, false);
+        }
+
+        @Override
+        void write(PotionMeta meta, PotionType type, boolean extended, boolean upgraded) {
+            PotionType target = type;
+            String prefix = upgraded ? STRONG : extended ? LONG : null;
+            if (prefix != null) {
+                try {
+                    target = PotionType.valueOf(prefix + type.name().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException ignored) {}
+            }
+            meta.setBasePotionType(target);
+        }
+    }
+
+    private static final class Legacy extends PotionAccess {
+        private final MethodHandle getBasePotionData;
+        private final MethodHandle setBasePotionData;
+        private final MethodHandle newPotionData;
+        private final MethodHandle getType;
+        private final MethodHandle isExtended;
+        private final MethodHandle isUpgraded;
+
+        Legacy() throws ReflectiveOperationException {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> potionData = Class.forName("org.bukkit.potion.PotionData");
+            getBasePotionData = lookup.findVirtual(PotionMeta.class, "getBasePotionData", MethodType.methodType(potionData));
+            setBasePotionData = lookup.findVirtual(PotionMeta.class, "setBasePotionData", MethodType.methodType(void.class, potionData));
+            newPotionData = lookup.findConstructor(potionData,
+                    MethodType.methodType(void.class, PotionType.class, boolean.class, boolean.class));
+            getType = lookup.findVirtual(potionData, "getType", MethodType.methodType(PotionType.class));
+            isExtended = lookup.findVirtual(potionData, "isExtended", MethodType.methodType(boolean.class));
+            isUpgraded = lookup.findVirtual(potionData, "isUpgraded", MethodType.methodType(boolean.class));
+        }
+
+        @Override
+        PotionInfo read(PotionMeta meta) {
+            try {
+                Object pd = getBasePotionData.invoke(meta);
+                if (pd == null) return null;
+                PotionType type = (PotionType) getType.invoke(pd);
+                return new PotionInfo(type == null ? "null" : type.name(),
+                        (boolean) isExtended.invoke(pd), (boolean) isUpgraded.invoke(pd));
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
+
+        @Override
+        void write(PotionMeta meta, PotionType type, boolean extended, boolean upgraded) {
+            try {
+                setBasePotionData.invoke(meta, newPotionData.invoke(type, extended, upgraded));
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    private static final class Unsupported extends PotionAccess {
+        @Override
+        PotionInfo read(PotionMeta meta) { return null; }
+
+        @Override
+        void write(PotionMeta meta, PotionType type, boolean extended, boolean upgraded) {}
+    }
+}
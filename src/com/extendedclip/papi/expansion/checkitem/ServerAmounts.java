@@ -0,0 +1,122 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Server-wide {@code amount_} totals. Inventories are copied on the main thread, then matched in
+ * parallel on a dedicated fork-join pool with the same per-player semantics as a single request.
+ * Totals are kept for {@code intervalMillis}; off-main callers get the last total while a refresh
+ * is scheduled on the main thread, or null before the first one lands. Keys carry resolved
+ * per-player values, so totals not refreshed for two intervals are dropped on the next store.
+ */
+final class ServerAmounts {
+
+    private record Total(long value, long computedAt) {}
+
+    private final Plugin plugin;
+    private final ForkJoinPool pool;
+    private final long intervalMillis;
+    private final Map<String, Total> totals = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    ServerAmounts(Plugin plugin, int parallelism, long intervalMillis) {
+        this.plugin = plugin;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.intervalMillis = Math.max(0, intervalMillis);
+    }
+
+    /**
+     * Current total for {@code key}, or null when an off-main caller asks before any total was
+     * computed. {@code stacks} picks the stacks of one player the spec looks at; it is only
+     * called on the main thread. An air spec counts every empty slot as unlimited, so its total
+     * is {@link Integer#MAX_VALUE} without scanning anyone.
+     */
+    Long amount(String key, CompiledMatcher matcher, Function<Player, ItemStack[]> stacks) {
+        if (matcher.matchesAir()) return (long) Integer.MAX_VALUE;
+        Total cached = totals.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.computedAt < intervalMillis) {
+            return cached.value;
+        }
+        if (Bukkit.isPrimaryThread()) {
+            List<ItemStack[]> snapshots = snapshot(stacks);
+            long value = pool.submit(() -> sum(matcher, snapshots)).join();
+            store(key, value);
+            return value;
+        }
+        if (refreshing.add(key)) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                // shutdown() also runs on the main thread, so the pool cannot close after this check.
+                if (pool.isShutdown()) {
+                    refreshing.remove(key);
+                    return;
+                }
+                List<ItemStack[]> snapshots = snapshot(stacks);
+                pool.execute(() -> {
+                    try {
+                        store(key, sum(matcher, snapshots));
+                    } finally {
+                        refreshing.remove(key);
+                    }
+                });
+            });
+        }
+        return cached != null ? cached.value : null;
+    }
+
+    private void store(String key, long value) {
+        long now = System.currentTimeMillis();
+        totals.values().removeIf(t -> now - t.computedAt >= 2 * intervalMillis);
+        totals.put(key, new Total(value, now));
+    }
+
+    void clear() {
+        totals.clear();
+    }
+
+    /** Main thread only; refreshes still queued on the scheduler then find the pool shut and skip. */
+    void shutdown() {
+        pool.shutdownNow();
+        totals.clear();
+        refreshing.clear();
+    }
+
+    private static List<ItemStack[]> snapshot(Function<Player, ItemStack[]> stacks) {
+        List<ItemStack[]> snapshots = new ArrayList<>(Bukkit.getOnlinePlayers().size());
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            ItemStack[] live = stacks.apply(player);
+            ItemStack[] copy = new ItemStack[live.length];
+            for (int i = 0; i < live.length; i++) {
+                if (live[i] != null) copy[i] = live[i].clone();
+            }
+            snapshots.add(copy);
+        }
+        return snapshots;
+    }
+
+    private static long sum(CompiledMatcher matcher, List<ItemStack[]> snapshots) {
+        return snapshots.parallelStream().mapToLong(items -> count(matcher, items)).sum();
+    }
+
+    /** Per-player count, as getItemAmount computes it without removal; air specs never get here. */
+    private static long count(CompiledMatcher matcher, ItemStack[] items) {
+        StackView view = new StackView();
+        long total = 0;
+        for (ItemStack stack : items) {
+            if (stack == null || stack.getType() == Material.AIR) continue;
+            if (matcher.matches(view.reset(stack))) total += stack.getAmount();
+        }
+        return total;
+    }
+}
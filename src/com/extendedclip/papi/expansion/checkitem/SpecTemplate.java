@@ -0,0 +1,64 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import com.extendedclip.papi.expansion.checkitem.CheckItemExpansion.ItemWrapper;
+
+import java.util.List;
+
+/**
+ * A checkitem spec parsed once. Modifiers without placeholders are already applied to
+ * {@link #base()}; the ones whose value holds a {@code {}} or {@code %%} placeholder are kept
+ * as holes (keyword + raw value), so a request only resolves those values and binds them.
+ * An {@code amtexpr:} hole also carries its compiled expression and binds as {@code amt}.
+ * A placeholder outside a modifier value can stand for any number of modifiers, so such a spec
+ * is kept {@linkplain #whole(String) whole}: one hole holding the entire spec, parsed per request.
+ */
+final class SpecTemplate {
+
+    private final ItemWrapper base;
+    private final String[] holeKeys;
+    private final String[] holeValues;
+    private final AmountExpression[] holeExpressions;
+    private final boolean whole;
+
+    SpecTemplate(ItemWrapper base, List<String> holeKeys, List<String> holeValues,
+                 List<AmountExpression> holeExpressions) {
+        this.base = base;
+        this.holeKeys = holeKeys.toArray(new String[0]);
+        this.holeValues = holeValues.toArray(new String[0]);
+        this.holeExpressions = holeExpressions.toArray(new AmountExpression[0]);
+        this.whole = false;
+    }
+
+    private SpecTemplate(String spec) {
+        this.base = null;
+        this.holeKeys = new String[]{null};
+        this.holeValues = new String[]{spec};
+        this.holeExpressions = new AmountExpression[1];
+        this.whole = true;
+    }
+
+    /** A spec with a placeholder in key position: its single hole is the spec itself. */
+    static SpecTemplate whole(String spec) {
+        return new SpecTemplate(spec);
+    }
+
+    /**
+     * Immutable and shared across requests; holes are bound through {@link ItemWrapper#toBuilder()}.
+     * Null for a {@linkplain #isWhole() whole} spec.
+     */
+    ItemWrapper base() { return base; }
+
+    /** True when the resolved spec must be parsed in full for every request. */
+    boolean isWhole() { return whole; }
+
+    boolean isStatic() { return holeKeys.length == 0; }
+
+    int holes() { return holeKeys.length; }
+
+    String holeKey(int i) { return holeKeys[i]; }
+
+    String holeValue(int i) { return holeValues[i]; }
+
+    /** Compiled expression of an {@code amtexpr:} hole, null for plain holes. */
+    AmountExpression holeExpression(int i) { return holeExpressions[i]; }
+}
@@ -0,0 +1,74 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link StackAttributes} per player slot, reused while the player's inventory version stays the
+ * same. Bukkit hands out a new ItemStack mirror on every read, so stacks are found by slot
+ * rather than identity; the version says the slot was not touched, and the material and amount
+ * are compared again as a cheap guard. Views only look a slot up once a meta or NBT predicate
+ * asks for it (see {@link StackView}), so material-only scans never touch the cache. A line is dropped on the next version, after
+ * {@code maxAgeMillis} (changes made by other plugins fire no event), or when the player quits,
+ * so the cache holds at most one inventory per online player.
+ */
+final class StackAttributeCache {
+
+    /** getContents() length: storage, armor and off-hand. */
+    static final int SLOTS = 41;
+
+    private final long maxAgeMillis;
+    private final Map<UUID, Line> lines = new ConcurrentHashMap<>();
+
+    StackAttributeCache(long maxAgeMillis) {
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+    }
+
+    /**
+     * The line for {@code version}, or null when the version is unknown (0). Callers fetch the
+     * line before reading the stacks, so a stack newer than the version can only land in a
+     * line that is about to be replaced.
+     */
+    Line line(UUID id, long version) {
+        if (version == 0) return null;
+        long now = System.currentTimeMillis();
+        Line line = lines.get(id);
+        if (line != null && line.version == version && now - line.createdAt <= maxAgeMillis) return line;
+        Line fresh = new Line(version, now);
+        lines.put(id, fresh);
+        return fresh;
+    }
+
+    void forget(UUID id) {
+        lines.remove(id);
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    static final class Line {
+        private final long version;
+        private final long createdAt;
+        private final AtomicReferenceArray<StackAttributes> slots = new AtomicReferenceArray<>(SLOTS);
+
+        private Line(long version, long createdAt) {
+            this.version = version;
+            this.createdAt = createdAt;
+        }
+
+        /** Attributes of {@code stack} at {@code slot}, or null for slots outside getContents(). */
+        StackAttributes get(int slot, ItemStack stack) {
+            if (slot < 0 || slot >= SLOTS) return null;
+            StackAttributes attrs = slots.get(slot);
+            if (attrs != null && attrs.describes(stack)) return attrs;
+            attrs = new StackAttributes(stack);
+            slots.set(slot, attrs);
+            return attrs;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import de.tr7zw.changeme.nbtapi.iface.ReadableNBT;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.PotionMeta;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the matchers derive from one stack: the meta clone, display name, lore (and its
+ * {@code |}-joined form), enchantments (as a map and by index id), potion base data and the
+ * custom-data NBT. Each is derived on first use only. Instances held by
+ * {@link StackAttributeCache} are shared between threads: a value is written before its bit in
+ * {@code loaded} is published, so a reader that sees the bit sees the value, and a lost bit only
+ * means one redundant derivation.
+ */
+final class StackAttributes {
+
+    private static final int META = 1;
+    private static final int NAME = 1 << 1;
+    private static final int LORE = 1 << 2;
+    private static final int JOINED_LORE = 1 << 3;
+    private static final int ENCHANTS = 1 << 4;
+    private static final int POTION = 1 << 5;
+    private static final int NBT = 1 << 6;
+    private static final int ENCHANT_LEVELS = 1 << 7;
+
+    private ItemStack stack;
+    private Material type;
+    private int amount;
+    private volatile int loaded;
+
+    private ItemMeta meta;
+    private String displayName;
+    private List<String> lore;
+    private String joinedLore;
+    private Map<Enchantment, Integer> enchants;
+    private EnchantmentIndex.Levels enchantLevels;
+    private PotionAccess.PotionInfo potion;
+    private ReadableNBT nbt;
+
+    /** Scratch instance, rebound with {@link #reset(ItemStack)}; never shared. */
+    StackAttributes() {}
+
+    StackAttributes(ItemStack stack) { reset(stack); }
+
+    StackAttributes reset(ItemStack stack) {
+        this.stack = stack;
+        this.type = stack.getType();
+        this.amount = stack.getAmount();
+        this.meta = null;
+        this.displayName = null;
+        this.lore = null;
+        this.joinedLore = null;
+        this.enchants = null;
+        this.enchantLevels = null;
+        this.potion = null;
+        this.nbt = null;
+        this.loaded = 0;
+        return this;
+    }
+
+    /**
+     * Cheap validation that {@code other} still holds what these attributes were derived from.
+     * Meta edits are caught by the inventory version and the line's max age, not here: this
+     * must not clone the meta.
+     */
+    boolean describes(ItemStack other) {
+        return other.getType() == type && other.getAmount() == amount;
+    }
+
+    ItemMeta meta() {
+        if ((loaded & META) == 0) {
+            meta = stack.getItemMeta();
+            loaded |= META;
+        }
+        return meta;
+    }
+
+    /** Null when the stack has no custom name. */
+    String displayName() {
+        if ((loaded & NAME) == 0) {
+            ItemMeta m = meta();
+            displayName = m != null && m.hasDisplayName() ? m.getDisplayName() : null;
+            loaded |= NAME;
+        }
+        return displayName;
+    }
+
+    /** Null when the stack has no lore. */
+    List<String> lore() {
+        if ((loaded & LORE) == 0) {
+            ItemMeta m = meta();
+            lore = m != null && m.hasLore() ? m.getLore() : null;
+            loaded |= LORE;
+        }
+        return lore;
+    }
+
+    /** Lore lines joined with {@code |}, as {@code loreequals:} compares them; null without lore. */
+    String joinedLore() {
+        if ((loaded & JOINED_LORE) == 0) {
+            List<String> lines = lore();
+            joinedLore = lines == null ? null : String.join("|", lines);
+            loaded |= JOINED_LORE;
+        }
+        return joinedLore;
+    }
+
+    /** Stored enchantments for books, applied ones otherwise; empty, never null. */
+    Map<Enchantment, Integer> enchants() {
+        if ((loaded & ENCHANTS) == 0) {
+            ItemMeta m = meta();
+            if (m == null) enchants = Collections.emptyMap();
+            else enchants = m instanceof EnchantmentStorageMeta esm ? esm.getStoredEnchants() : m.getEnchants();
+            loaded |= ENCHANTS;
+        }
+        return enchants;
+    }
+
+    /** {@link #enchants()} by {@link EnchantmentIndex} id, for {@link EnchantmentSet#matches}. */
+    EnchantmentIndex.Levels enchantLevels() {
+        if ((loaded & ENCHANT_LEVELS) == 0) {
+            enchantLevels = EnchantmentIndex.get().levels(enchants());
+            loaded |= ENCHANT_LEVELS;
+        }
+        return enchantLevels;
+    }
+
+    /** Null unless the stack is a potion with base data. */
+    PotionAccess.PotionInfo potion() {
+        if ((loaded & POTION) == 0) {
+            potion = meta() instanceof PotionMeta pm ? PotionAccess.INSTANCE.read(pm) : null;
+            loaded |= POTION;
+        }
+        return potion;
+    }
+
+    ReadableNBT nbt() {
+        if ((loaded & NBT) == 0) {
+            nbt = CheckItemExpansion.readNbt(stack);
+            loaded |= NBT;
+        }
+        return nbt;
+    }
+}
@@ -0,0 +1,77 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import de.tr7zw.changeme.nbtapi.iface.ReadableNBT;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read view over one stack for the duration of an evaluation.
+ * {@link ItemStack#getItemMeta()} returns a fresh clone on every call, so the meta is
+ * materialised at most once, and only when a meta-dependent predicate asks for it.
+ * The custom-data NBT is memoised the same way, so several specs evaluated against the same
+ * stack share one decode. A single view is reused across the stacks of one scan via {@link #reset(ItemStack)}.
+ * When the scan knows the player slot, {@link #reset(ItemStack, StackAttributeCache.Line, int)}
+ * binds the view to that slot's cached attributes instead, so the derivation outlives the scan.
+ * That lookup is deferred to the first attribute read, after the material test has passed.
+ */
+final class StackView {
+
+    private final StackAttributes scratch = new StackAttributes();
+    private ItemStack stack;
+    private StackAttributes attrs;
+    private StackAttributeCache.Line line;
+    private int slot;
+
+    StackView() {}
+
+    StackView(ItemStack stack) { reset(stack); }
+
+    StackView reset(ItemStack stack) {
+        this.stack = stack;
+        this.attrs = scratch.reset(stack);
+        this.line = null;
+        return this;
+    }
+
+    /** {@code line} may be null (no cache for this player), which is the same as {@link #reset(ItemStack)}. */
+    StackView reset(ItemStack stack, StackAttributeCache.Line line, int slot) {
+        if (line == null) return reset(stack);
+        this.stack = stack;
+        this.attrs = null;
+        this.line = line;
+        this.slot = slot;
+        return this;
+    }
+
+    private StackAttributes attrs() {
+        StackAttributes a = attrs;
+        if (a == null) {
+            a = line.get(slot, stack);
+            if (a == null) a = scratch.reset(stack);
+            attrs = a;
+        }
+        return a;
+    }
+
+    ItemStack stack() { return stack; }
+
+    ItemMeta meta() { return attrs().meta(); }
+
+    String displayName() { return attrs().displayName(); }
+
+    List<String> lore() { return attrs().lore(); }
+
+    String joinedLore() { return attrs().joinedLore(); }
+
+    Map<Enchantment, Integer> enchants() { return attrs().enchants(); }
+
+    EnchantmentIndex.Levels enchantLevels() { return attrs().enchantLevels(); }
+
+    PotionAccess.PotionInfo potion() { return attrs().potion(); }
+
+    ReadableNBT nbt() { return attrs().nbt(); }
+}
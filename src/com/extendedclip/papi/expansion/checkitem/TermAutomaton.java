@@ -0,0 +1,104 @@
+package com.extendedclip.papi.expansion.checkitem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over the terms of a {@code namecontainsany:}/{@code lorecontainsany:}
+ * list, built once at parse time. {@link #containsAny(String)} reads the text once, whatever
+ * the number of terms. Transitions are kept as sorted char arrays per state; immutable once built.
+ */
+final class TermAutomaton {
+
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    private final boolean[] accept;
+
+    private TermAutomaton(char[][] labels, int[][] targets, int[] fail, boolean[] accept) {
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.accept = accept;
+    }
+
+    static TermAutomaton compile(List<String> terms) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(false);
+        for (String term : terms) {
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                Integer next = trie.get(state).get(term.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(term.charAt(i), next);
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+        }
+
+        int n = trie.size();
+        char[][] labels = new char[n][];
+        int[][] targets = new int[n][];
+        boolean[] accept = new boolean[n];
+        for (int s = 0; s < n; s++) {
+            TreeMap<Character, Integer> edges = trie.get(s);
+            labels[s] = new char[edges.size()];
+            targets[s] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> e : edges.entrySet()) {
+                labels[s][i] = e.getKey();
+                targets[s][i++] = e.getValue();
+            }
+            accept[s] = terminal.get(s);
+        }
+
+        // Failure links breadth-first; a state also accepts when its longest proper suffix does.
+        int[] fail = new int[n];
+        TermAutomaton automaton = new TermAutomaton(labels, targets, fail, accept);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) queue.add(child);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int i = 0; i < labels[s].length; i++) {
+                char c = labels[s][i];
+                int child = targets[s][i];
+                int f = fail[s];
+                int t;
+                while ((t = automaton.step(f, c)) < 0 && f != 0) f = fail[f];
+                fail[child] = t < 0 || t == child ? 0 : t;
+                accept[child] |= accept[fail[child]];
+                queue.add(child);
+            }
+        }
+        return automaton;
+    }
+
+    /** True when at least one term occurs in {@code text}. */
+    boolean containsAny(String text) {
+        if (accept[0]) return true;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) state = fail[state];
+            state = next < 0 ? 0 : next;
+            if (accept[state]) return true;
+        }
+        return false;
+    }
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i < 0 ? -1 : targets[state][i];
+    }
+}
@@ -1,56 +1,183 @@
 package com.extendedclip.papi.expansion.checkitem.cache;
 
-import java.time.Instant;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 /**
- * Cache LRU simple (clé -> valeur) avec option de TTL (désactivé si ttlMillis <= 0).
- * Thread-safe via synchronisation sur la map interne.
+ * Cache borné (clé -> valeur) avec option de TTL (désactivé si ttlMillis <= 0).
+ * Lectures sans verrou (ConcurrentHashMap) ; l'éviction est découpée en segments, chacun
+ * verrouillé séparément et seulement lors d'un dépassement de capacité.
+ * Le loader s'exécute hors verrou, une seule fois par clé même sous accès concurrents.
  */
 public class PlaceholderCache {
 
+    private static final int SEGMENTS = 16;
+
     private final int maxSize;
     private final long ttlMillis;
-    private final Map<String, Entry> map;
+    private final Segment[] segments;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     public PlaceholderCache(int maxSize, long ttlMillis) {
         this.maxSize = Math.max(50, maxSize);
         this.ttlMillis = Math.max(0, ttlMillis);
-        this.map = new LinkedHashMap<>(128, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
-                return size() > PlaceholderCache.this.maxSize;
-            }
-        };
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(4, (this.maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
     }
 
-    private record Entry(Object value, long timestamp) {}
+    private static final class Node {
+        final Object value;
+        final long createdAt;
+        volatile long lastAccess;
+
+        Node(Object value, long now) {
+            this.value = value;
+            this.createdAt = now;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    /** Instantané des compteurs, pour dimensionner cache_max_size. */
+    public record Stats(long hits, long misses, long loads, long totalLoadNanos, long evictions, int size) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        public long averageLoadNanos() {
+            return loads == 0 ? 0L : totalLoadNanos / loads;
+        }
+    }
 
     @SuppressWarnings("unchecked")
     public <T> T get(String key, Function<String, T> loader) {
-        synchronized (map) {
-            Entry e = map.get(key);
-            long now = Instant.now().toEpochMilli();
-            if (e != null) {
-                if (ttlMillis > 0 && now - e.timestamp > ttlMillis) {
-                    map.remove(key);
-                } else {
-                    return (T) e.value;
-                }
-            }
+        T cached = getIfPresent(key);
+        if (cached != null) return cached;
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return (T) running.join();
+        }
+        try {
+            long start = System.nanoTime();
             T v = loader.apply(key);
-            if (v != null) {
-                map.put(key, new Entry(v, now));
-            }
+            loadNanos.add(System.nanoTime() - start);
+            loads.increment();
+            put(key, v);
+            mine.complete(v);
             return v;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Lecture seule : renvoie null si absent ou expiré, sans appeler de loader. */
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(String key) {
+        Segment seg = segmentFor(key);
+        Node n = seg.map.get(key);
+        if (n == null) {
+            misses.increment();
+            return null;
+        }
+        if (ttlMillis > 0 && System.currentTimeMillis() - n.createdAt > ttlMillis) {
+            seg.map.remove(key, n);
+            misses.increment();
+            return null;
+        }
+        n.lastAccess = System.nanoTime();
+        hits.increment();
+        return (T) n.value;
+    }
+
+    public void put(String key, Object value) {
+        if (value == null) return;
+        Segment seg = segmentFor(key);
+        seg.map.put(key, new Node(value, System.currentTimeMillis()));
+        if (seg.map.size() > seg.capacity) {
+            evictions.add(seg.evict());
         }
     }
 
     public void clear() {
-        synchronized (map) {
-            map.clear();
+        for (Segment seg : segments) {
+            seg.map.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment seg : segments) size += seg.map.size();
+        return size;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), loadNanos.sum(), evictions.sum(), size());
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment {
+        final int capacity;
+        final Map<String, Node> map = new ConcurrentHashMap<>();
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Retire les entrées les moins récemment lues jusqu'à 7/8 de la capacité ;
+         * l'éviction se fait par lot pour amortir le tri.
+         */
+        synchronized int evict() {
+            int size = map.size();
+            if (size <= capacity) return 0;
+            int target = capacity - capacity / 8;
+            int toRemove = size - target;
+
+            long[] ticks = new long[size];
+            int i = 0;
+            for (Node n : map.values()) {
+                if (i == ticks.length) break;
+                ticks[i++] = n.lastAccess;
+            }
+            if (i == 0) return 0;
+            Arrays.sort(ticks, 0, i);
+            long threshold = ticks[Math.min(toRemove, i) - 1];
+
+            int removed = 0;
+            for (Map.Entry<String, Node> e : map.entrySet()) {
+                if (removed >= toRemove) break;
+                if (e.getValue().lastAccess <= threshold && map.remove(e.getKey(), e.getValue())) {
+                    removed++;
+                }
+            }
+            return removed;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.extendedclip.papi.expansion.checkitem.inventory;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+/**
+ * Immutable copy of one player inventory, taken on the main thread so async placeholder
+ * requests can read it without touching the live inventory. Stacks are private clones
+ * (empty slots are null); callers must not modify them or the contents array.
+ */
+public final class InventorySnapshot {
+
+    private final long version;
+    private final long takenAt;
+    private final int heldSlot;
+    private final ItemStack[] contents;
+
+    private InventorySnapshot(long version, long takenAt, int heldSlot, ItemStack[] contents) {
+        this.version = version;
+        this.takenAt = takenAt;
+        this.heldSlot = heldSlot;
+        this.contents = contents;
+    }
+
+    public static InventorySnapshot capture(PlayerInventory inv, long version, long now) {
+        ItemStack[] live = inv.getContents();
+        ItemStack[] copy = new ItemStack[live.length];
+        for (int slot = 0; slot < live.length; slot++) {
+            ItemStack stack = live[slot];
+            if (stack != null && stack.getType() != Material.AIR) copy[slot] = stack.clone();
+        }
+        return new InventorySnapshot(version, now, inv.getHeldItemSlot(), copy);
+    }
+
+    public long version() { return version; }
+    public long takenAt() { return takenAt; }
+    public int heldSlot() { return heldSlot; }
+
+    /** The shared contents array, in getContents() order. Read only. */
+    public ItemStack[] contents() { return contents; }
+
+    public ItemStack item(int slot) {
+        return slot >= 0 && slot < contents.length ? contents[slot] : null;
+    }
+}
@@ -0,0 +1,59 @@
+package com.extendedclip.papi.expansion.checkitem.inventory;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player {@link InventorySnapshot} store. A main-thread task republishes a player's
+ * snapshot every {@code periodTicks} when the tracker version changed or the snapshot is
+ * older than {@code maxAgeMillis}; readers on any thread get the last published one lock-free.
+ */
+public class InventorySnapshots {
+
+    private final InventoryTracker tracker;
+    private final long maxAgeMillis;
+    private final Map<UUID, InventorySnapshot> byPlayer = new ConcurrentHashMap<>();
+    private BukkitTask task;
+
+    public InventorySnapshots(InventoryTracker tracker, long maxAgeMillis) {
+        this.tracker = tracker;
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+        tracker.onForget(byPlayer::remove);
+    }
+
+    public void start(Plugin plugin, long periodTicks) {
+        long period = Math.max(1, periodTicks);
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, 1L, period);
+    }
+
+    /** Main thread only. */
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            UUID id = p.getUniqueId();
+            long version = tracker.version(id);
+            InventorySnapshot current = byPlayer.get(id);
+            if (current == null || current.version() != version
+                    || (maxAgeMillis > 0 && now - current.takenAt() > maxAgeMillis)) {
+                byPlayer.put(id, InventorySnapshot.capture(p.getInventory(), version, now));
+            }
+        }
+    }
+
+    /** Last published snapshot, or null before the first one for this player. */
+    public InventorySnapshot get(UUID id) {
+        return byPlayer.get(id);
+    }
+
+    public void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        byPlayer.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package com.extendedclip.papi.expansion.checkitem.inventory;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.*;
+import org.bukkit.plugin.Plugin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Per-player inventory version stamp, bumped by every event that can change an inventory.
+ * Bukkit fires these events before the change is applied, so the stamp is bumped once more
+ * on the next tick to invalidate anything read in between. Stamps come from one shared clock,
+ * so a stamp is never reused, even after a player rejoins.
+ */
+public class InventoryTracker implements Listener {
+
+    private final Plugin plugin;
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<UUID, Long> versions = new ConcurrentHashMap<>();
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<UUID>> forgetListeners = new CopyOnWriteArrayList<>();
+
+    public InventoryTracker(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public long version(UUID id) {
+        Long v = versions.get(id);
+        return v == null ? 0L : v;
+    }
+
+    /** Marks the inventory as changed, now and again on the next tick. */
+    public void touch(Entity entity) {
+        if (!(entity instanceof HumanEntity)) return;
+        UUID id = entity.getUniqueId();
+        bump(id);
+        if (pending.add(id)) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                pending.remove(id);
+                versions.computeIfPresent(id, (k, v) -> clock.incrementAndGet());
+            });
+        }
+    }
+
+    /** Called with the UUID of a player who quits, so derived per-player state can be dropped. */
+    public void onForget(Consumer<UUID> listener) {
+        forgetListeners.add(listener);
+    }
+
+    private void bump(UUID id) {
+        versions.put(id, clock.incrementAndGet());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onClick(InventoryClickEvent e) { touch(e.getWhoClicked()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDrag(InventoryDragEvent e) { touch(e.getWhoClicked()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onClose(InventoryCloseEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPickup(EntityPickupItemEvent e) { touch(e.getEntity()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDrop(PlayerDropItemEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onConsume(PlayerItemConsumeEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBreak(PlayerItemBreakEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDamage(PlayerItemDamageEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onHeld(PlayerItemHeldEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSwap(PlayerSwapHandItemsEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlace(BlockPlaceEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBucketEmpty(PlayerBucketEmptyEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBucketFill(PlayerBucketFillEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(PlayerDeathEvent e) { touch(e.getEntity()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) { touch(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        UUID id = e.getPlayer().getUniqueId();
+        versions.remove(id);
+        for (Consumer<UUID> l : forgetListeners) l.accept(id);
+    }
+}
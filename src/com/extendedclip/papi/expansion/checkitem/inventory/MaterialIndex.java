@@ -0,0 +1,52 @@
+package com.extendedclip.papi.expansion.checkitem.inventory;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of which slots of a player inventory hold which material,
+ * stamped with the {@link InventoryTracker} version it was built from.
+ */
+public final class MaterialIndex {
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final long version;
+    private final long builtAt;
+    private final Map<Material, int[]> slots;
+
+    private MaterialIndex(long version, long builtAt, Map<Material, int[]> slots) {
+        this.version = version;
+        this.builtAt = builtAt;
+        this.slots = slots;
+    }
+
+    public static MaterialIndex build(ItemStack[] contents, long version, long now) {
+        Map<Material, int[]> bySlot = new EnumMap<>(Material.class);
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack stack = contents[slot];
+            if (stack == null || stack.getType() == Material.AIR) continue;
+            int[] arr = bySlot.get(stack.getType());
+            if (arr == null) {
+                bySlot.put(stack.getType(), new int[]{slot});
+            } else {
+                arr = Arrays.copyOf(arr, arr.length + 1);
+                arr[arr.length - 1] = slot;
+                bySlot.put(stack.getType(), arr);
+            }
+        }
+        return new MaterialIndex(version, now, bySlot);
+    }
+
+    public long version() { return version; }
+    public long builtAt() { return builtAt; }
+
+    public int[] slots(Material material) {
+        int[] s = slots.get(material);
+        return s == null ? NO_SLOTS : s;
+    }
+}
@@ -0,0 +1,42 @@
+package com.extendedclip.papi.expansion.checkitem.inventory;
+
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player {@link MaterialIndex} store, rebuilt lazily when the tracker version changes
+ * or when the index is older than {@code maxAgeMillis} (inventory edits done through the API
+ * by other plugins fire no event, so the age bound caps how long those can go unseen).
+ */
+public class MaterialIndexes {
+
+    private final InventoryTracker tracker;
+    private final long maxAgeMillis;
+    private final Map<UUID, MaterialIndex> byPlayer = new ConcurrentHashMap<>();
+
+    public MaterialIndexes(InventoryTracker tracker, long maxAgeMillis) {
+        this.tracker = tracker;
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+        tracker.onForget(byPlayer::remove);
+    }
+
+    public MaterialIndex get(Player p) {
+        UUID id = p.getUniqueId();
+        long version = tracker.version(id);
+        long now = System.currentTimeMillis();
+        MaterialIndex index = byPlayer.get(id);
+        if (index == null || index.version() != version
+                || (maxAgeMillis > 0 && now - index.builtAt() > maxAgeMillis)) {
+            index = MaterialIndex.build(p.getInventory().getContents(), version, now);
+            byPlayer.put(id, index);
+        }
+        return index;
+    }
+
+    public void clear() {
+        byPlayer.clear();
+    }
+}
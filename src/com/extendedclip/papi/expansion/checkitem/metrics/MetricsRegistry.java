@@ -0,0 +1,148 @@
+package com.extendedclip.papi.expansion.checkitem.metrics;
+
+import com.extendedclip.papi.expansion.checkitem.cache.PlaceholderCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Request latency per placeholder mode and stacks scanned per inventory walk, plus a flat
+ * {@code name -> value} view that also carries the cache counters, for the {@code stats_}
+ * placeholders and the periodic dump file.
+ */
+public final class MetricsRegistry {
+
+    public enum Mode {
+        CHECK, AMOUNT, REMOVE, GIVE, GETINFO, MULTI, SERVER, EXCHANGE;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final Map<Mode, Histogram> latency = new EnumMap<>(Mode.class);
+    private final Histogram stacksScanned = new Histogram();
+
+    public MetricsRegistry() {
+        for (Mode mode : Mode.values()) latency.put(mode, new Histogram());
+    }
+
+    public void recordLatency(Mode mode, long nanos) {
+        latency.get(mode).record(nanos);
+    }
+
+    public void recordScan(int stacks) {
+        stacksScanned.record(stacks);
+    }
+
+    public void reset() {
+        latency.values().forEach(Histogram::reset);
+        stacksScanned.reset();
+    }
+
+    private static final String[] LATENCY_STATS = {"count", "avg_micros", "p50_micros", "p95_micros", "p99_micros", "max_micros"};
+    private static final String[] SCAN_STATS = {"count", "total", "avg", "p95", "max"};
+    private static final String[] CACHE_STATS = {"hit_ratio", "hits", "misses", "evictions", "size"};
+
+    /**
+     * Every metric by name: {@code <mode>_count}, {@code <mode>_avg_micros},
+     * {@code <mode>_p50_micros}/{@code p95}/{@code p99}/{@code max}, {@code stacks_scanned_*},
+     * {@code parse_cache_*}, {@code parse_avg_micros} and {@code result_cache_*}.
+     * Cache stats may be null when that cache is not running.
+     */
+    public Map<String, String> snapshot(PlaceholderCache.Stats parse, PlaceholderCache.Stats result) {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (Mode mode : Mode.values()) {
+            Histogram h = latency.get(mode);
+            for (String stat : LATENCY_STATS) out.put(mode.key + "_" + stat, latencyStat(h, stat));
+        }
+        for (String stat : SCAN_STATS) out.put("stacks_scanned_" + stat, scanStat(stat));
+        for (String stat : CACHE_STATS) out.put("parse_cache_" + stat, cacheStat(parse, stat));
+        out.put("parse_avg_micros", parse == null ? "0" : micros(parse.averageLoadNanos()));
+        for (String stat : CACHE_STATS) out.put("result_cache_" + stat, cacheStat(result, stat));
+        return out;
+    }
+
+    /**
+     * One metric of {@link #snapshot}, computed alone: a {@code stats_} request only reads the
+     * histogram or cache it names. The cache stats are only fetched for cache metrics.
+     * Null for an unknown name.
+     */
+    public String get(String name, Supplier<PlaceholderCache.Stats> parse, Supplier<PlaceholderCache.Stats> result) {
+        if (name.startsWith("stacks_scanned_")) return scanStat(name.substring("stacks_scanned_".length()));
+        if (name.startsWith("parse_cache_")) return cacheStat(parse.get(), name.substring("parse_cache_".length()));
+        if (name.startsWith("result_cache_")) return cacheStat(result.get(), name.substring("result_cache_".length()));
+        if (name.equals("parse_avg_micros")) {
+            PlaceholderCache.Stats stats = parse.get();
+            return stats == null ? "0" : micros(stats.averageLoadNanos());
+        }
+        for (Mode mode : Mode.values()) {
+            if (name.length() > mode.key.length() && name.startsWith(mode.key) && name.charAt(mode.key.length()) == '_') {
+                return latencyStat(latency.get(mode), name.substring(mode.key.length() + 1));
+            }
+        }
+        return null;
+    }
+
+    /** Writes {@code name=value} lines through a temp file, so readers never see a partial dump. */
+    public static void dump(Path file, Map<String, String> snapshot) throws IOException {
+        StringBuilder sb = new StringBuilder("# checkitem metrics ").append(Instant.now()).append('\n');
+        snapshot.forEach((k, v) -> sb.append(k).append('=').append(v).append('\n'));
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String latencyStat(Histogram h, String stat) {
+        return switch (stat) {
+            case "count" -> String.valueOf(h.count());
+            case "avg_micros" -> micros(h.mean());
+            case "p50_micros" -> micros(h.percentile(0.50));
+            case "p95_micros" -> micros(h.percentile(0.95));
+            case "p99_micros" -> micros(h.percentile(0.99));
+            case "max_micros" -> micros(h.max());
+            default -> null;
+        };
+    }
+
+    private String scanStat(String stat) {
+        return switch (stat) {
+            case "count" -> String.valueOf(stacksScanned.count());
+            case "total" -> String.valueOf(stacksScanned.sum());
+            case "avg" -> format("%.1f", stacksScanned.mean());
+            case "p95" -> String.valueOf(stacksScanned.percentile(0.95));
+            case "max" -> String.valueOf(stacksScanned.max());
+            default -> null;
+        };
+    }
+
+    private static String cacheStat(PlaceholderCache.Stats stats, String stat) {
+        if (stats == null) return Arrays.asList(CACHE_STATS).contains(stat) ? "0" : null;
+        return switch (stat) {
+            case "hit_ratio" -> format("%.3f", stats.hitRatio());
+            case "hits" -> String.valueOf(stats.hits());
+            case "misses" -> String.valueOf(stats.misses());
+            case "evictions" -> String.valueOf(stats.evictions());
+            case "size" -> String.valueOf(stats.size());
+            default -> null;
+        };
+    }
+
+    private static String micros(double nanos) {
+        return format("%.1f", nanos / 1000.0);
+    }
+
+    private static String format(String pattern, double value) {
+        return String.format(Locale.ROOT, pattern, value);
+    }
+}